@@ -0,0 +1,96 @@
+package com.markchan.androidsticker.sample.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * 素材数据库迁移测试.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MaterialDatabaseHelperTest {
+
+    private static final String DATABASE_NAME = "materials_migration_test.db";
+
+    private Context context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsInstalledPackages() throws Exception {
+        // 第一版的表和旧版本留下的数据
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(
+                context.getDatabasePath(DATABASE_NAME), null);
+        db.execSQL("create table " + MaterialDatabaseHelper.MATERIAL_TABLE_NAME
+                + "(_id  integer primary key, name text, type integer)");
+        db.execSQL("insert into " + MaterialDatabaseHelper.MATERIAL_TABLE_NAME
+                + "(name, type) values ('zhuangban', 1), ('zhuang', 1), ('zhuang', 1),"
+                + " ('cute_pack', 1), ('cute_pack', 1), ('art_pack', 3)");
+        db.setVersion(1);
+        db.close();
+
+        MaterialRegistry registry = createRegistry();
+        try {
+            List<MaterialRegistry.Entry> packages = registry.getPackages(1);
+            assertEquals(1, packages.size());
+            MaterialRegistry.Entry entry = packages.get(0);
+            assertEquals("cute_pack", entry.getName());
+            assertEquals(MaterialRegistry.Entry.NO_CHECKSUM, entry.getChecksum());
+            assertNull(entry.getIndexPath());
+            assertEquals(1, registry.getPackages(3).size());
+
+            registry.register(1, new MaterialRegistry.Entry("cute_pack", 0xCAFEBABEL, 12,
+                    "cute_pack/" + MaterialIndex.FILE_NAME));
+            packages = registry.getPackages(1);
+            assertEquals(1, packages.size());
+            entry = packages.get(0);
+            assertEquals(0xCAFEBABEL, entry.getChecksum());
+            assertEquals(12, entry.getItemCount());
+            assertEquals("cute_pack/" + MaterialIndex.FILE_NAME, entry.getIndexPath());
+        } finally {
+            registry.close();
+        }
+    }
+
+    @Test
+    public void create_matchesUpgradedSchema() throws Exception {
+        MaterialRegistry registry = createRegistry();
+        try {
+            registry.register(2, new MaterialRegistry.Entry("mode_pack",
+                    MaterialRegistry.Entry.NO_CHECKSUM, 0, null));
+            registry.register(2, new MaterialRegistry.Entry("new_pack", 1, 3,
+                    "new_pack/" + MaterialIndex.FILE_NAME));
+
+            List<MaterialRegistry.Entry> packages = registry.getPackages(2);
+            assertEquals(2, packages.size());
+            assertEquals("mode_pack", packages.get(0).getName());
+            assertNull(packages.get(0).getIndexPath());
+            assertEquals(3, packages.get(1).getItemCount());
+            assertEquals(0, registry.getPackages(3).size());
+        } finally {
+            registry.close();
+        }
+    }
+
+    private MaterialRegistry createRegistry() {
+        return new MaterialRegistry(new MaterialDatabaseHelper(context, DATABASE_NAME));
+    }
+}
@@ -0,0 +1,91 @@
+package com.markchan.androidsticker.sample.util;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * 素材包登记表在不同数据量下的打开、查询和批量写入耗时, 结果输出到 logcat.
+ *
+ * 每种数据量下当前类别只有少量素材包, 其余行属于其它类别, 对应素材界面打开时的查询.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MaterialRegistryBenchmark {
+
+    private static final String TAG = "MaterialRegistryBench";
+
+    private static final String DATABASE_NAME = "materials_benchmark.db";
+
+    private static final int[] TABLE_SIZES = {100, 1000, 10000, 50000};
+
+    private static final int QUERY_TYPE = 1;
+    private static final int QUERY_PACKAGES = 10;
+
+    private static final int REPEAT = 5;
+
+    private Context context;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void openTimeAgainstTableSize() throws Exception {
+        for (int size : TABLE_SIZES) {
+            context.deleteDatabase(DATABASE_NAME);
+
+            MaterialRegistry registry = createRegistry();
+            MaterialRegistry.Entry[] others = createEntries(size - QUERY_PACKAGES);
+            long start = System.nanoTime();
+            registry.register(QUERY_TYPE + 1, others);
+            long insertNanos = System.nanoTime() - start;
+            MaterialRegistry.Entry[] packages = createEntries(QUERY_PACKAGES);
+            registry.register(QUERY_TYPE, packages);
+            // 重复登记只更新登记信息
+            registry.register(QUERY_TYPE, packages);
+            registry.close();
+
+            long openNanos = Long.MAX_VALUE;
+            for (int i = 0; i < REPEAT; i++) {
+                registry = createRegistry();
+                start = System.nanoTime();
+                List<MaterialRegistry.Entry> result = registry.getPackages(QUERY_TYPE);
+                openNanos = Math.min(openNanos, System.nanoTime() - start);
+                registry.close();
+                assertEquals(QUERY_PACKAGES, result.size());
+            }
+
+            Log.i(TAG, String.format("rows=%d insert=%.2fms (%.1fus/row) open+query=%.2fms",
+                    size, insertNanos / 1e6, insertNanos / 1e3 / others.length,
+                    openNanos / 1e6));
+        }
+    }
+
+    private static MaterialRegistry.Entry[] createEntries(int count) {
+        MaterialRegistry.Entry[] entries = new MaterialRegistry.Entry[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = new MaterialRegistry.Entry("pack_" + i, i, 1,
+                    "pack_" + i + "/" + MaterialIndex.FILE_NAME);
+        }
+        return entries;
+    }
+
+    private MaterialRegistry createRegistry() {
+        return new MaterialRegistry(new MaterialDatabaseHelper(context, DATABASE_NAME));
+    }
+}
@@ -4,36 +4,38 @@ import android.app.Activity;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.os.Environment;
-import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
-import android.widget.RelativeLayout;
 import android.widget.TextView;
 import android.widget.Toast;
+import com.markchan.andrroidsticker.StickerAttacher;
+import com.markchan.andrroidsticker.StickerAttacher.Component;
+import com.markchan.andrroidsticker.StickerComposer;
+import com.markchan.andrroidsticker.StickerDecoder;
+import com.markchan.andrroidsticker.StickerExporter;
+import com.markchan.andrroidsticker.StickerView;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 
 public class MainActivity extends Activity {
 
-    private RelativeLayout container;
+    private static final String TAG = "MainActivity";
+
+    private StickerView stickerView;
     private Button saveBtn;
     private ImageView img;
     private Bitmap src;
     private TextView decorateType;
     private static final int REQUEST_FOR_PICTURE = 1;
-    // 定义贴图素材集合
-    private ArrayList<StickerView> materialList;
+    private StickerDecoder stickerDecoder;
+    private StickerExporter stickerExporter;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -41,14 +43,13 @@ public class MainActivity extends Activity {
         setContentView(R.layout.activity_main);
 
         // 贴图容器
-        container = (RelativeLayout) findViewById(R.id.container);
+        stickerView = (StickerView) findViewById(R.id.sticker_view);
+        stickerDecoder = new StickerDecoder();
+        stickerExporter = new StickerExporter(Bitmap.CompressFormat.JPEG, 90);
         img = (ImageView) findViewById(R.id.src);
         src = BitmapFactory.decodeResource(this.getResources(), R.drawable.bg);
         img.setImageBitmap(src);
 
-        // 素材集合
-        materialList = new ArrayList<>();
-
         // 跳转至素材界面
         decorateType = (TextView) findViewById(R.id.type_decorate);
         decorateType.setOnClickListener(new View.OnClickListener() {
@@ -68,16 +69,33 @@ public class MainActivity extends Activity {
 
             @Override
             public void onClick(View view) {
-                Bitmap tempBmp = Bitmap.createBitmap(src);
-                for (StickerView effectView : materialList) {
-                    if (effectView.isActive()) {
-                        tempBmp = createBitmap(tempBmp,
-                                BitmapFactory.decodeFile(effectView.getPhotoPath()),
-                                effectView.getCenterPoint(), effectView.getDegree(),
-                                effectView.getScale());
-                    }
-                }
-                saveMyBitmap(tempBmp);
+                saveBtn.setEnabled(false);
+                new StickerComposer(src)
+                        .setViewMatrix(getStickerToImageMatrix())
+                        .addStickers(stickerView.getStickers())
+                        .compose(new StickerComposer.Callback() {
+
+                            @Override
+                            public void onProgress(int completedTiles, int totalTiles) {
+                            }
+
+                            @Override
+                            public void onComposed(Bitmap result) {
+                                saveMyBitmap(result);
+                            }
+
+                            @Override
+                            public void onFailed(Exception e) {
+                                saveBtn.setEnabled(true);
+                                Toast.makeText(MainActivity.this, "保存失败", Toast.LENGTH_SHORT)
+                                        .show();
+                            }
+
+                            @Override
+                            public void onCancelled() {
+                                saveBtn.setEnabled(true);
+                            }
+                        });
             }
         });
     }
@@ -87,92 +105,83 @@ public class MainActivity extends Activity {
         super.onActivityResult(requestCode, resultCode, data);
         if (requestCode == REQUEST_FOR_PICTURE && resultCode == RESULT_OK) {
             String imgPath = data.getStringExtra(MaterialActivity.MATERIAL_PATH);
+
+            // 贴图最大为容器的一半, 解码完成前先显示同尺寸的占位
+            int reqWidth = stickerView.getWidth() / 2;
+            int reqHeight = stickerView.getHeight() / 2;
+            int placeholderSize = Math.min(reqWidth, reqHeight);
+            Component placeholder = new Component(null, placeholderSize, placeholderSize);
+            final StickerAttacher sticker = new StickerAttacher(MainActivity.this, placeholder,
+                    StickerDecoder.decodeResource(getResources(), R.drawable.ic_f_delete_normal),
+                    StickerDecoder.decodeResource(getResources(), R.drawable.ic_f_rotate_normal));
             // 贴图容器中心点
-            int centerX = (img.getLeft() + img.getRight()) / 2;
-            int centerY = (img.getTop() + img.getBottom()) / 2;
-            Log.v("ckjc", "centerX=" + centerX + "  centerY=" + centerY);
-
-            StickerView view = new StickerView(MainActivity.this, imgPath);
-
-            RelativeLayout.LayoutParams params = new RelativeLayout.LayoutParams(
-                    RelativeLayout.LayoutParams.WRAP_CONTENT,
-                    RelativeLayout.LayoutParams.WRAP_CONTENT);
-            params.addRule(RelativeLayout.CENTER_IN_PARENT);
-            view.setLayoutParams(params);
-            container.addView(view);
-            // 添加至素材集合
-            materialList.add(view);
+            sticker.drag((stickerView.getWidth() - placeholderSize) / 2,
+                    (stickerView.getHeight() - placeholderSize) / 2);
+            stickerView.addSticker(sticker);
+
+            stickerDecoder.decode(imgPath, reqWidth, reqHeight, new StickerDecoder.Callback() {
+
+                @Override
+                public void onDecoded(Component component) {
+                    if (sticker.isActive()) {
+                        sticker.setStickerComponent(component);
+                        stickerView.notifyStickerChanged(sticker);
+                    } else {
+                        component.release();
+                    }
+                }
+
+                @Override
+                public void onFailed(String path) {
+                    stickerView.removeSticker(sticker);
+                    Toast.makeText(MainActivity.this, "贴图加载失败", Toast.LENGTH_SHORT).show();
+                }
+            });
         }
     }
 
-    // 图片合成
-    private Bitmap createBitmap(Bitmap src, Bitmap dst, float[] centerPoint, float degree,
-            float scaleValue) {
-        if (src == null) {
-            return null;
-        }
-        int w = src.getWidth();
-        int h = src.getHeight();
-        DisplayMetrics metric = new DisplayMetrics();
-        getWindowManager().getDefaultDisplay().getMetrics(metric);
-        int width = metric.widthPixels;     // 屏幕宽度（像素）
-        float scale = (float) w / (float) width;
-
-        int ww = dst.getWidth();
-        int wh = dst.getHeight();
-
-        float Ltx = centerPoint[0] - img.getLeft() - ww * scaleValue / 2;
-        float Lty = centerPoint[1] - img.getTop() - wh * scaleValue / 2;
-
-        Bitmap newb = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);//创建一个新的和SRC长度宽度一样的位图
-        Canvas cv = new Canvas(newb);
-        cv.drawBitmap(src, 0, 0, null);//在 0，0坐标开始画入src
-
-        // 定义矩阵对象
-        Matrix matrix = new Matrix();
-        matrix.postScale(scaleValue, scaleValue);
-//        matrix.postRotate(degree);
-        cv.save();
-        cv.rotate(degree, centerPoint[0], centerPoint[1]);
-        Bitmap dstbmp = Bitmap.createBitmap(dst, 0, 0, dst.getWidth(), dst.getHeight(),
-                matrix, true);
-        cv.drawBitmap(dstbmp, Ltx * scale, Lty * scale, null); // 在src画贴图
-//        cv.save( Canvas.ALL_SAVE_FLAG ); // 保存
-        cv.restore(); // 存储
-        return newb;
+    // 贴图容器坐标到底图像素坐标的变换
+    private Matrix getStickerToImageMatrix() {
+        Drawable drawable = img.getDrawable();
+        Matrix imageToSticker = new Matrix();
+        imageToSticker.setScale((float) drawable.getIntrinsicWidth() / src.getWidth(),
+                (float) drawable.getIntrinsicHeight() / src.getHeight());
+        imageToSticker.postConcat(img.getImageMatrix());
+        imageToSticker.postTranslate(
+                img.getLeft() + img.getPaddingLeft() - stickerView.getLeft(),
+                img.getTop() + img.getPaddingTop() - stickerView.getTop());
+        Matrix stickerToImage = new Matrix();
+        imageToSticker.invert(stickerToImage);
+        return stickerToImage;
     }
 
     // 保存图片到手机
-    public void saveMyBitmap(Bitmap mBitmap) {
+    public void saveMyBitmap(final Bitmap mBitmap) {
         // 获取当前时间，进一步转化为字符串
         Date date = new Date();
         SimpleDateFormat format = new SimpleDateFormat(
                 "yyyy" + "_" + "MM" + "_" + "dd" + "_" + "HH" + "_" + "mm" + "_" + "ss");
         String bmpName = format.format(date);
 
-        File f = new File(
-                Environment.getExternalStorageDirectory().getPath() + "/" + bmpName + ".jpg");
-        if (f.exists()) {
-            f.delete();
-        }
-        FileOutputStream fOut = null;
-        try {
-            fOut = new FileOutputStream(f);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
-        mBitmap.compress(Bitmap.CompressFormat.JPEG, 100, fOut);
-        try {
-            fOut.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        try {
-            fOut.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        File f = new File(Environment.getExternalStorageDirectory().getPath() + "/" + bmpName
+                + stickerExporter.getExtension());
+        stickerExporter.export(mBitmap, f, new StickerExporter.Callback() {
+
+            @Override
+            public void onExported(File file, long bytesWritten, long elapsedMillis) {
+                mBitmap.recycle();
+                saveBtn.setEnabled(true);
+                Log.d(TAG, "Exported " + bytesWritten + " bytes in " + elapsedMillis + "ms");
+                Toast.makeText(MainActivity.this, "已保存:" + file.getAbsolutePath(),
+                        Toast.LENGTH_SHORT).show();
+            }
 
-        Toast.makeText(MainActivity.this, "已保存:" + f.getAbsolutePath(), Toast.LENGTH_SHORT).show();
+            @Override
+            public void onFailed(Exception e) {
+                mBitmap.recycle();
+                saveBtn.setEnabled(true);
+                Toast.makeText(MainActivity.this, "保存失败", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 }
@@ -1,24 +1,25 @@
 package com.markchan.androidsticker.sample;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.GridView;
+import android.widget.ProgressBar;
 import android.widget.TextView;
-import com.markchan.androidsticker.sample.util.MaterialDatabaseHelper;
+import com.markchan.androidsticker.sample.util.MaterialCatalog;
+import com.markchan.androidsticker.sample.util.MaterialIndex;
+import com.markchan.androidsticker.sample.util.MaterialPack;
+import com.markchan.androidsticker.sample.util.MaterialPager;
+import com.markchan.androidsticker.sample.util.MaterialRegistry;
 import com.markchan.androidsticker.sample.util.Utils;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  * @author chenkaijian 贴图素材显示界面
@@ -27,29 +28,21 @@ public class MaterialActivity extends Activity {
 
     public static final String MATERIAL_PATH = "material_path";
 
-    private int materialType = 1;// 贴图类别
+    private static final String DEFAULT_PACK = "zhuangban.zip";
 
-    private SharedPreferences preferences = null;
-    private MaterialDatabaseHelper databaseHelper = null;
-    private SQLiteDatabase db = null;
+    private int materialType = StickerApplication.DEFAULT_MATERIAL_TYPE;// 贴图类别
 
     private TextView cancel;
     private GridView gv;
+    private ProgressBar extractProgress;
 
-    private ArrayList<HashMap<String, String>> packageList;// 素材包名集合
-    private MaterialAdapter adapter;
-    private ArrayList<HashMap<String, String>> materialList;// 素材图片集合
+    private MaterialPager pager;// 素材图片集合
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_material);
 
-        preferences = getSharedPreferences("material_default_value", MODE_PRIVATE);
-
-        databaseHelper = new MaterialDatabaseHelper(this);
-        db = databaseHelper.getReadableDatabase();
-
         // 取消按钮
         cancel = (TextView) findViewById(R.id.cancel);
         cancel.setOnClickListener(new View.OnClickListener() {
@@ -60,73 +53,172 @@ public class MaterialActivity extends Activity {
             }
         });
 
-        // 第一次进入应用时解压默认素材包
-        if (preferences.getBoolean("isFirst", true)) {
-            // 解压素材包
-            Utils.unZipMaterials(MaterialActivity.this, "zhuangban", materialType);
-            SharedPreferences.Editor editor = preferences.edit();
-            editor.putBoolean("isFirst", false);
-            editor.apply();
-        }
+        gv = (GridView) findViewById(R.id.gridView);
+        gv.setSelector(new ColorDrawable(Color.TRANSPARENT));
+        extractProgress = (ProgressBar) findViewById(R.id.extract_progress);
 
-        db.execSQL("insert into " + MaterialDatabaseHelper.MATERIAL_TABLE_NAME
-                + "(name,type)values('zhuang',1)");
-
-        // 遍历获取当前类别下的素材包名集合
-        packageList = new ArrayList<HashMap<String, String>>();
-        Cursor cursor = null;
-        cursor = db.rawQuery("select * from "
-                + MaterialDatabaseHelper.MATERIAL_TABLE_NAME
-                + " where type=?", new String[]{String.valueOf(materialType)});
-        HashMap map = null;
-        while (cursor.moveToNext()) {
-            map = new HashMap<String, Object>();
-            map.put("name", cursor.getString(1));
-            packageList.add(map);
+        // 默认素材包不再整体解压, 在后台读取目录和各素材包索引后直接显示
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // 优先使用应用启动时预热好的列表
+                MaterialPager warmPager = ((StickerApplication) getApplication())
+                        .takeMaterialPager(materialType);
+                final MaterialPager result = warmPager != null
+                        ? warmPager : loadMaterials(MaterialActivity.this, materialType);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isFinishing()) {
+                            showMaterials(result);
+                        } else {
+                            result.close();
+                        }
+                    }
+                });
+            }
+        }, "MaterialLoader").start();
+    }
+
+    // 加载某一类别下的素材, 只读取各素材包的素材数量, 素材在滚动时分页读取. 在后台线程调用
+    static MaterialPager loadMaterials(Context context, int materialType) {
+        File dir = new File(context.getExternalFilesDir(null),
+                Utils.getMaterialDescription(materialType));
+        MaterialPager.Builder builder = new MaterialPager.Builder(dir);
+        try {
+            builder.addPack(Utils.openAssetPack(context, DEFAULT_PACK));
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        cursor.close();
-
-        // 保存素材图片集合
-        materialList = new ArrayList<HashMap<String, String>>();
-        File dir = getExternalFilesDir(null);
-        for (int i = 0; i < packageList.size(); i++) {
-            File file = new File(
-                    dir.getAbsolutePath() + "/" + Utils.getMaterialDescription(materialType) + "/"
-                            + packageList.get(i).get("name") + "/materials.xml");
+
+        // 遍历获取当前类别下的素材包集合
+        MaterialRegistry registry = MaterialRegistry.getInstance(context);
+        ArrayList<MaterialRegistry.Entry> backfilled = new ArrayList<>();
+        for (MaterialRegistry.Entry entry : registry.getPackages(materialType)) {
+            String packageName = entry.getName();
             try {
-                InputStream in = new FileInputStream(file);
-                ArrayList<HashMap<String, String>> tempList = Utils
-                        .parseXML(in, packageList.get(i).get("name"));
-                for (int j = 0; j < tempList.size(); j++) {
-                    materialList.add(tempList.get(j));
+                String indexPath = entry.getIndexPath();
+                File indexFile = indexPath != null ? new File(dir, indexPath) : null;
+                if (indexFile != null && indexFile.isFile()) {
+                    builder.addIndex(packageName, indexFile, entry.getItemCount());
+                    continue;
                 }
+                // 旧版本登记的素材包, 生成索引后补齐登记信息, 下次直接使用
+                indexFile = Utils.prepareMaterialIndex(new File(dir, packageName));
+                int count = MaterialIndex.readSize(indexFile);
+                builder.addIndex(packageName, indexFile, count);
+                backfilled.add(new MaterialRegistry.Entry(packageName,
+                        getChecksum(context, packageName, entry.getChecksum()), count,
+                        packageName + "/" + MaterialIndex.FILE_NAME));
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
+        // 补齐的登记信息在一个事务中写入
+        if (!backfilled.isEmpty()) {
+            try {
+                registry.register(materialType,
+                        backfilled.toArray(new MaterialRegistry.Entry[backfilled.size()]));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return builder.build();
+    }
 
-        // 素材显示
-        gv = (GridView) findViewById(R.id.gridView);
-        gv.setSelector(new ColorDrawable(Color.TRANSPARENT));
-        adapter = new MaterialAdapter(this, materialList);
+    // 旧版本从 Assets 中的同名素材包解压, 校验值从素材包的中央目录计算, 不复制也不读取文件内容
+    private static long getChecksum(Context context, String packageName, long checksum) {
+        if (checksum != MaterialRegistry.Entry.NO_CHECKSUM) {
+            return checksum;
+        }
+        try {
+            return Utils.openAssetPack(context, packageName + ".zip").getChecksum();
+        } catch (IOException e) {
+            // 新版本已不再内置这个素材包
+            return MaterialRegistry.Entry.NO_CHECKSUM;
+        }
+    }
+
+    // 素材显示
+    private void showMaterials(MaterialPager materials) {
+        pager = materials;
+        final MaterialAdapter adapter = new MaterialAdapter(this, pager);
+        pager.setOnPageLoadedListener(new MaterialPager.OnPageLoadedListener() {
+            @Override
+            public void onPageLoaded(int page) {
+                // 预读的下一页不在屏幕上, 滚动到时 getView 会直接取到, 不必刷新
+                int first = page * MaterialPager.PAGE_SIZE;
+                int last = first + MaterialPager.PAGE_SIZE - 1;
+                if (first <= gv.getLastVisiblePosition()
+                        && last >= gv.getFirstVisiblePosition()) {
+                    adapter.notifyDataSetChanged();
+                }
+            }
+        });
         gv.setAdapter(adapter);
         gv.setOnItemClickListener(new AdapterView.OnItemClickListener() {
 
             @Override
             public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                Intent intent = new Intent();
-                intent.putExtra(MATERIAL_PATH,
-                        getExternalFilesDir(null).getAbsolutePath() + "/" + Utils
-                                .getMaterialDescription(materialType) + "/" + materialList
-                                .get(position).get("name"));
-                setResult(RESULT_OK, intent);
-
-                adapter.getItem(position);
-                finish();
+                MaterialCatalog page = pager.getPage(position / MaterialPager.PAGE_SIZE);
+                if (page == null) {
+                    // 这一页还没有加载完
+                    return;
+                }
+                int index = position % MaterialPager.PAGE_SIZE;
+                if (page.isPacked(index)) {
+                    selectPackMaterial(page.getPack(index), page.getName(index));
+                } else {
+                    selectMaterial(page.getFile(index).getAbsolutePath());
+                }
             }
         });
     }
 
+    // 只解压选中的素材, 完成后返回
+    private void selectPackMaterial(final MaterialPack pack, final String name) {
+        gv.setEnabled(false);
+        extractProgress.setVisibility(View.VISIBLE);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                File file = null;
+                try {
+                    file = Utils.extractMaterial(MaterialActivity.this, pack, name,
+                            materialType);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                final File result = file;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        extractProgress.setVisibility(View.GONE);
+                        gv.setEnabled(true);
+                        if (result != null && !isFinishing()) {
+                            selectMaterial(result.getAbsolutePath());
+                        }
+                    }
+                });
+            }
+        }, "MaterialExtractor").start();
+    }
+
+    private void selectMaterial(String path) {
+        Intent intent = new Intent();
+        intent.putExtra(MATERIAL_PATH, path);
+        setResult(RESULT_OK, intent);
+        finish();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (pager != null) {
+            pager.close();
+        }
+    }
+
     @Override
     public void finish() {
         super.finish();
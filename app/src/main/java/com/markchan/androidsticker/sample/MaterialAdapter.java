@@ -1,16 +1,14 @@
 package com.markchan.androidsticker.sample;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.BaseAdapter;
 import android.widget.ImageView;
-import java.io.File;
-import java.util.ArrayList;
-import java.util.HashMap;
+import com.markchan.androidsticker.sample.util.MaterialCatalog;
+import com.markchan.androidsticker.sample.util.MaterialPager;
+import com.markchan.androidsticker.sample.util.ThumbnailLoader;
 
 /**
  * @author chenkaijian 贴图素材适配器
@@ -19,16 +17,19 @@ public class MaterialAdapter extends BaseAdapter {
 
     //  上下文对象
     private Context context;
-    //  素材集合
-    private ArrayList<HashMap<String, String>> materialList;
+    //  分页加载的素材集合
+    private final MaterialPager pager;
+    //  缩略图加载器
+    private final ThumbnailLoader thumbnailLoader;
 
-    MaterialAdapter(Context context, ArrayList<HashMap<String, String>> materialList) {
+    MaterialAdapter(Context context, MaterialPager pager) {
         this.context = context;
-        this.materialList = materialList;
+        this.pager = pager;
+        this.thumbnailLoader = ThumbnailLoader.getInstance(context);
     }
 
     public int getCount() {
-        return materialList.size();
+        return pager.size();
     }
 
     public Object getItem(int item) {
@@ -51,17 +52,34 @@ public class MaterialAdapter extends BaseAdapter {
             holder = (ViewHolder) convertView.getTag();
         }
 
-        File dir = context.getExternalFilesDir(null);
-
-        Bitmap bitmap = BitmapFactory.decodeFile(
-                dir.getAbsolutePath() + "/decorate/" + materialList.get(position)
-                        .get("thumbnailname"));
-        holder.img.setImageBitmap(bitmap);
+        // 刷新时同一位置的缩略图已在加载或已显示, 不重复加载
+        if (holder.position == position && holder.request != null) {
+            return convertView;
+        }
+        // 取消复用前的加载
+        holder.position = position;
+        if (holder.request != null) {
+            holder.request.cancel();
+        }
+        MaterialCatalog page = pager.getPage(position / MaterialPager.PAGE_SIZE);
+        int index = position % MaterialPager.PAGE_SIZE;
+        if (page == null) {
+            // 所在页加载完成后会刷新
+            holder.request = null;
+            holder.img.setImageDrawable(null);
+        } else if (page.isPacked(index)) {
+            holder.request = thumbnailLoader.load(page.getPack(index),
+                    page.getThumbnailEntry(index), holder.img);
+        } else {
+            holder.request = thumbnailLoader.load(page.getThumbnailPath(index), holder.img);
+        }
         return convertView;
     }
 
     public final class ViewHolder {
 
         public ImageView img;
+        public ThumbnailLoader.Request request;
+        public int position = -1;
     }
 }
@@ -1,17 +1,120 @@
 package com.markchan.androidsticker.sample;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.WorkerThread;
+import com.markchan.andrroidsticker.StickerDecoder;
+import com.markchan.androidsticker.sample.util.MaterialPager;
 import com.orhanobut.logger.AndroidLogAdapter;
 import com.orhanobut.logger.Logger;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Created by Mark on 2017/7/4.
+ *
+ * 启动后在低优先级线程中预热: 打开素材数据库和默认素材包, 读取默认类别的素材索引和第一页,
+ * 解码贴纸共用的控制点图标. 第一次打开素材界面和添加贴纸时不再有冷启动的 I/O.
+ * 预热好的素材列表一段时间内没有被取走就关闭, 不长期占用内存和文件.
  */
 public class StickerApplication extends Application {
 
+    public static final int DEFAULT_MATERIAL_TYPE = 1;
+
+    /** 预热好的素材列表最多保留的时间 */
+    private static final long WARM_PAGER_TIMEOUT_MS = 30 * 1000;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Runnable closeWarmPager = new Runnable() {
+        @Override
+        public void run() {
+            closePager(takeWarmPager());
+        }
+    };
+
+    private FutureTask<Void> warmUp;
+
+    /** 预热好的素材列表, 只交给第一次打开的素材界面 */
+    private MaterialPager warmPager;
+
     @Override
     public void onCreate() {
         super.onCreate();
         Logger.addLogAdapter(new AndroidLogAdapter());
+
+        warmUp = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                warmUp();
+            }
+        }, null);
+        new Thread(warmUp, "WarmUp").start();
+    }
+
+    /**
+     * 预热完成时结束, 预热失败不影响正常加载
+     */
+    public Future<Void> getWarmUp() {
+        return warmUp;
+    }
+
+    /**
+     * 等待预热完成并取走预热好的素材列表, 只有第一次调用且类别相同时返回, 否则返回 null.
+     * 类别不同时预热好的素材列表被关闭
+     */
+    @WorkerThread
+    public MaterialPager takeMaterialPager(int materialType) {
+        try {
+            warmUp.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+        MaterialPager pager = takeWarmPager();
+        if (materialType != DEFAULT_MATERIAL_TYPE) {
+            closePager(pager);
+            return null;
+        }
+        return pager;
+    }
+
+    private synchronized MaterialPager takeWarmPager() {
+        mainHandler.removeCallbacks(closeWarmPager);
+        MaterialPager pager = warmPager;
+        warmPager = null;
+        return pager;
+    }
+
+    private void closePager(final MaterialPager pager) {
+        if (pager == null) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                pager.close();
+            }
+        });
+    }
+
+    @WorkerThread
+    private void warmUp() {
+        // 解码时钉在缓存中且不释放, 进程内一直保留, 之后的添加贴纸直接命中缓存
+        StickerDecoder.decodeResource(getResources(), R.drawable.ic_f_delete_normal);
+        StickerDecoder.decodeResource(getResources(), R.drawable.ic_f_rotate_normal);
+
+        MaterialPager pager = MaterialActivity.loadMaterials(this, DEFAULT_MATERIAL_TYPE);
+        pager.preloadPage(0);
+        synchronized (this) {
+            warmPager = pager;
+            mainHandler.postDelayed(closeWarmPager, WARM_PAGER_TIMEOUT_MS);
+        }
     }
 }
@@ -0,0 +1,317 @@
+package com.markchan.androidsticker.sample.util;
+
+import com.markchan.andrroidsticker.AtomicFiles;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缩略图磁盘缓存.
+ *
+ * 每个缓存项是目录下的一个文件, 文件名由源文件路径、修改时间和目标尺寸计算得出,
+ * 源文件被替换或目标尺寸改变后自然失效. 写入和删除记录在 journal 中, 打开时重放 journal
+ * 恢复访问顺序, 总大小超过上限时删除最久未使用的项.
+ */
+public class DiskThumbnailCache {
+
+    /**
+     * 向缓存文件写入内容
+     */
+    public interface Editor {
+
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    static final String JOURNAL_FILE = "journal";
+    static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    static final String MAGIC = "thumbnail-cache";
+    static final String VERSION = "1";
+
+    private static final String PUT = "P";
+    private static final String REMOVE = "D";
+    private static final String READ = "R";
+
+    /** 冗余记录超过该数量且多于缓存项时重写 journal */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final long maxSize;
+
+    /** 按访问顺序排列, 值为文件大小 */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(0, 0.75F, true);
+    private long size;
+
+    private Writer journalWriter;
+    private int redundantOpCount;
+
+    public static DiskThumbnailCache open(File directory, long maxSize) throws IOException {
+        DiskThumbnailCache cache = new DiskThumbnailCache(directory, maxSize);
+        cache.readJournal();
+        cache.removeStaleFiles();
+        cache.rebuildJournal();
+        cache.trimToSize();
+        return cache;
+    }
+
+    private DiskThumbnailCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 缓存 key, 源文件修改后 key 随之改变
+     */
+    public static String key(File source, int width, int height) {
+        return key(source.getAbsolutePath(), source.lastModified(), width, height);
+    }
+
+    /**
+     * 缓存 key, version 标识源内容的版本(如修改时间、CRC)
+     */
+    public static String key(String source, long version, int width, int height) {
+        String raw = source + "|" + version + "|" + width + "x" + height;
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(raw.getBytes(UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return String.valueOf(raw.hashCode() & 0xFFFFFFFFL);
+        }
+    }
+
+    /**
+     * 获取缓存文件, 不存在时返回 null
+     */
+    public synchronized File get(String key) throws IOException {
+        Long length = entries.get(key);
+        if (length == null) {
+            return null;
+        }
+        File file = getEntryFile(key);
+        if (!file.exists()) {
+            remove(key);
+            return null;
+        }
+        appendJournal(READ, key);
+        return file;
+    }
+
+    /**
+     * 写入缓存, 写入过程中出错时不会留下不完整的缓存项
+     */
+    public boolean put(String key, Editor editor) throws IOException {
+        File tempFile = new File(directory, key + "." + Thread.currentThread().getId()
+                + AtomicFiles.TEMP_SUFFIX);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile));
+        boolean success = false;
+        try {
+            editor.writeTo(out);
+            out.close();
+            success = true;
+        } finally {
+            if (!success) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+                tempFile.delete();
+            }
+        }
+
+        synchronized (this) {
+            File file = getEntryFile(key);
+            try {
+                AtomicFiles.commit(tempFile, file);
+            } catch (IOException e) {
+                return false;
+            }
+            Long oldLength = entries.put(key, file.length());
+            if (oldLength != null) {
+                size -= oldLength;
+                redundantOpCount++;
+            }
+            size += file.length();
+            appendJournal(PUT, key + " " + file.length());
+            trimToSize();
+            return true;
+        }
+    }
+
+    public synchronized boolean remove(String key) throws IOException {
+        Long length = entries.remove(key);
+        if (length == null) {
+            return false;
+        }
+        size -= length;
+        getEntryFile(key).delete();
+        redundantOpCount++;
+        appendJournal(REMOVE, key);
+        return true;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized int entryCount() {
+        return entries.size();
+    }
+
+    public synchronized void close() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+            journalWriter = null;
+        }
+    }
+
+    private File getEntryFile(String key) {
+        return new File(directory, key);
+    }
+
+    private void readJournal() throws IOException {
+        File journal = new File(directory, JOURNAL_FILE);
+        if (!journal.exists()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journal), UTF_8));
+        try {
+            if (!MAGIC.equals(reader.readLine()) || !VERSION.equals(reader.readLine())) {
+                // 版本不符, 丢弃全部缓存
+                return;
+            }
+            int lineCount = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineCount++;
+                if (!readJournalLine(line)) {
+                    // 写入中途被杀, 最后一行可能不完整
+                    break;
+                }
+            }
+            redundantOpCount = lineCount - entries.size();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private boolean readJournalLine(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length < 2) {
+            return false;
+        }
+        String key = parts[1];
+        if (PUT.equals(parts[0]) && parts.length == 3) {
+            long length;
+            try {
+                length = Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            Long oldLength = entries.put(key, length);
+            size += length - (oldLength != null ? oldLength : 0);
+        } else if (REMOVE.equals(parts[0])) {
+            Long oldLength = entries.remove(key);
+            if (oldLength != null) {
+                size -= oldLength;
+            }
+        } else if (READ.equals(parts[0])) {
+            entries.get(key);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 清理与 journal 不符的缓存项和没有记录的文件(如写入中途被杀留下的临时文件)
+     */
+    private void removeStaleFiles() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            File file = getEntryFile(entry.getKey());
+            if (!file.exists() || file.length() != entry.getValue()) {
+                size -= entry.getValue();
+                file.delete();
+                iterator.remove();
+            }
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.equals(JOURNAL_FILE) && !entries.containsKey(name)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * 按当前缓存项重写 journal
+     */
+    private void rebuildJournal() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+        }
+
+        File tempJournal = new File(directory, JOURNAL_FILE_TEMP);
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(tempJournal), UTF_8));
+        try {
+            writer.write(MAGIC + "\n" + VERSION + "\n");
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                writer.write(PUT + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        File journal = new File(directory, JOURNAL_FILE);
+        AtomicFiles.commit(tempJournal, journal);
+        journalWriter = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(journal, true), UTF_8));
+        redundantOpCount = 0;
+    }
+
+    private void appendJournal(String op, String args) throws IOException {
+        if (op.equals(READ)) {
+            redundantOpCount++;
+        }
+        journalWriter.write(op + " " + args + "\n");
+        journalWriter.flush();
+        if (redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD
+                && redundantOpCount >= entries.size()) {
+            rebuildJournal();
+        }
+    }
+
+    private void trimToSize() throws IOException {
+        while (size > maxSize && !entries.isEmpty()) {
+            remove(entries.keySet().iterator().next());
+        }
+    }
+}
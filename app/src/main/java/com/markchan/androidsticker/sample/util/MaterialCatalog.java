@@ -0,0 +1,195 @@
+package com.markchan.androidsticker.sample.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * 素材列表.
+ *
+ * 每个素材只保存素材包下标和包内的原图名、缩略图名, 存放在按下标对应的数组中,
+ * 素材包目录前缀按包只保存一份. 未解压素材包中的缩略图条目在构建时查好,
+ * 已解压素材的缩略图路径在第一次使用时拼接并缓存, 列表滚动时不再分配.
+ */
+public final class MaterialCatalog {
+
+    /**
+     * 按顺序添加素材包
+     */
+    public static final class Builder {
+
+        private final File baseDir;
+        private final ArrayList<String> packPrefixes = new ArrayList<>();
+        private final ArrayList<MaterialPack> packs = new ArrayList<>();
+
+        private int size;
+        private int[] packOf = new int[16];
+        private String[] names = new String[16];
+        private String[] thumbnailNames = new String[16];
+        private MaterialPack.Entry[] thumbnailEntries = new MaterialPack.Entry[16];
+
+        /**
+         * @param baseDir 已解压素材包所在的类别目录
+         */
+        public Builder(File baseDir) {
+            this.baseDir = baseDir;
+        }
+
+        /**
+         * 添加未解压素材包中的素材, 以 thumbnail 开头的文件是缩略图, 没有缩略图的素材不显示
+         */
+        public Builder addPack(MaterialPack pack) {
+            for (MaterialPack.Entry entry : pack.getEntries()) {
+                String entryName = entry.getName();
+                int separator = entryName.lastIndexOf('/');
+                String name = entryName.substring(separator + 1);
+                if (entry.isDirectory() || name.startsWith("thumbnail")) {
+                    continue;
+                }
+                String prefix = entryName.substring(0, separator + 1);
+                MaterialPack.Entry thumbnail = pack.getEntry(prefix + "thumbnail_" + name);
+                if (thumbnail == null) {
+                    continue;
+                }
+                add(packIndex(prefix, pack), name,
+                        thumbnail.getName().substring(separator + 1), thumbnail);
+            }
+            return this;
+        }
+
+        /**
+         * 添加已解压素材包中的素材
+         */
+        public Builder addIndex(String packageName, MaterialIndex index) {
+            int pack = packIndex(packageName + "/", null);
+            for (int i = 0; i < index.size(); i++) {
+                add(pack, index.getName(i), index.getThumbnailName(i), null);
+            }
+            return this;
+        }
+
+        /**
+         * 添加另一个列表中 [from, to) 范围的素材
+         */
+        public Builder addRange(MaterialCatalog catalog, int from, int to) {
+            for (int i = from; i < to; i++) {
+                int pack = catalog.packOf[i];
+                add(packIndex(catalog.packPrefixes[pack], catalog.packs[pack]), catalog.names[i],
+                        catalog.thumbnailNames[i], catalog.thumbnailEntries[i]);
+            }
+            return this;
+        }
+
+        public MaterialCatalog build() {
+            return new MaterialCatalog(baseDir,
+                    packPrefixes.toArray(new String[packPrefixes.size()]),
+                    packs.toArray(new MaterialPack[packs.size()]), size,
+                    Arrays.copyOf(packOf, size), Arrays.copyOf(names, size),
+                    Arrays.copyOf(thumbnailNames, size), Arrays.copyOf(thumbnailEntries, size));
+        }
+
+        /**
+         * 同一素材包的素材共用一个前缀, 素材包数量很少, 直接遍历查找
+         */
+        private int packIndex(String prefix, MaterialPack pack) {
+            for (int i = 0; i < packPrefixes.size(); i++) {
+                if (packs.get(i) == pack && packPrefixes.get(i).equals(prefix)) {
+                    return i;
+                }
+            }
+            packPrefixes.add(prefix);
+            packs.add(pack);
+            return packPrefixes.size() - 1;
+        }
+
+        private void add(int pack, String name, String thumbnailName,
+                MaterialPack.Entry thumbnailEntry) {
+            if (size == names.length) {
+                int capacity = size * 2;
+                packOf = Arrays.copyOf(packOf, capacity);
+                names = Arrays.copyOf(names, capacity);
+                thumbnailNames = Arrays.copyOf(thumbnailNames, capacity);
+                thumbnailEntries = Arrays.copyOf(thumbnailEntries, capacity);
+            }
+            packOf[size] = pack;
+            names[size] = name;
+            thumbnailNames[size] = thumbnailName;
+            thumbnailEntries[size] = thumbnailEntry;
+            size++;
+        }
+    }
+
+    private final File baseDir;
+    private final String[] packPrefixes;
+    private final MaterialPack[] packs;
+
+    private final int size;
+    private final int[] packOf;
+    private final String[] names;
+    private final String[] thumbnailNames;
+    private final MaterialPack.Entry[] thumbnailEntries;
+    private final String[] thumbnailPaths;
+
+    private MaterialCatalog(File baseDir, String[] packPrefixes, MaterialPack[] packs, int size,
+            int[] packOf, String[] names, String[] thumbnailNames,
+            MaterialPack.Entry[] thumbnailEntries) {
+        this.baseDir = baseDir;
+        this.packPrefixes = packPrefixes;
+        this.packs = packs;
+        this.size = size;
+        this.packOf = packOf;
+        this.names = names;
+        this.thumbnailNames = thumbnailNames;
+        this.thumbnailEntries = thumbnailEntries;
+        this.thumbnailPaths = new String[size];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 素材是否在未解压的素材包中
+     */
+    public boolean isPacked(int position) {
+        return packs[packOf[position]] != null;
+    }
+
+    public MaterialPack getPack(int position) {
+        return packs[packOf[position]];
+    }
+
+    /**
+     * 相对类别目录的原图路径, 同时也是素材包中的条目名
+     */
+    public String getName(int position) {
+        return packPrefixes[packOf[position]] + names[position];
+    }
+
+    /**
+     * 已解压素材的原图文件
+     */
+    public File getFile(int position) {
+        return new File(baseDir, getName(position));
+    }
+
+    /**
+     * 未解压素材的缩略图条目
+     */
+    public MaterialPack.Entry getThumbnailEntry(int position) {
+        return thumbnailEntries[position];
+    }
+
+    /**
+     * 已解压素材的缩略图路径, 只在主线程调用
+     */
+    public String getThumbnailPath(int position) {
+        String path = thumbnailPaths[position];
+        if (path == null) {
+            path = new File(baseDir, packPrefixes[packOf[position]] + thumbnailNames[position])
+                    .getPath();
+            thumbnailPaths[position] = path;
+        }
+        return path;
+    }
+}
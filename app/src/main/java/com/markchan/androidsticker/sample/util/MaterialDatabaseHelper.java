@@ -1,34 +1,88 @@
-package com.markchan.androidsticker.sample.util;
-
-import android.content.Context;
-import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
-
-public class MaterialDatabaseHelper extends SQLiteOpenHelper {
-
-    private static final String DATABASE_NAME = "materials.db";
-    public static final String MATERIAL_TABLE_NAME = "material_table";
-
-    private static final int DATABASE_VERSION = 1;
-
-    public MaterialDatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
-    }
-
-    @Override
-    public void onCreate(SQLiteDatabase db) {
-
-        db.execSQL("create table " + MATERIAL_TABLE_NAME
-                + "(_id  integer primary key, " + "name text,"
-                + "type integer)");
-        db.execSQL("insert into " + MATERIAL_TABLE_NAME + "(name,type)values('zhuangban',1)");
-    }
-
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-
-        db.execSQL("drop table if exists" + MATERIAL_TABLE_NAME);
-
-        onCreate(db);
-    }
-}
+package com.markchan.androidsticker.sample.util;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+
+/**
+ * 素材包数据库. 新建时先建出第一版的表, 再依次执行各版本的迁移, 升级时只执行缺少的部分
+ */
+public class MaterialDatabaseHelper extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "materials.db";
+    public static final String MATERIAL_TABLE_NAME = "material_table";
+    public static final String MATERIAL_INDEX_NAME = "material_type_name";
+
+    /** 素材包的 MaterialPack#getChecksum() */
+    public static final String COLUMN_CHECKSUM = "checksum";
+    public static final String COLUMN_ITEM_COUNT = "item_count";
+    /** 索引文件相对类别目录的路径 */
+    public static final String COLUMN_INDEX_PATH = "index_path";
+
+    private static final int DATABASE_VERSION = 3;
+
+    public MaterialDatabaseHelper(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    MaterialDatabaseHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        // 后台写入时不阻塞读取
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+
+        db.execSQL("create table " + MATERIAL_TABLE_NAME
+                + "(_id  integer primary key, " + "name text,"
+                + "type integer)");
+        // 新建和升级走同一条路径
+        onUpgrade(db, 1, DATABASE_VERSION);
+    }
+
+    /**
+     * 每个版本只做增量修改, 已登记的素材包保留. 在 SQLiteOpenHelper 的事务中执行, 任一步失败整体回滚
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            switch (version) {
+                case 2:
+                    // 旧版本每次打开素材界面都会插入一行, 去重后加唯一索引.
+                    // 默认素材包直接从 assets 读取, 不再登记
+                    db.execSQL("delete from " + MATERIAL_TABLE_NAME + " where _id not in"
+                            + " (select min(_id) from " + MATERIAL_TABLE_NAME
+                            + " group by type, name)");
+                    db.execSQL("delete from " + MATERIAL_TABLE_NAME
+                            + " where name in ('zhuang', 'zhuangban')");
+                    db.execSQL("create unique index if not exists " + MATERIAL_INDEX_NAME
+                            + " on " + MATERIAL_TABLE_NAME + "(type, name)");
+                    break;
+                case 3:
+                    // 旧行的新列为空, 第一次打开素材界面时补齐
+                    addColumn(db, COLUMN_CHECKSUM, "integer");
+                    addColumn(db, COLUMN_ITEM_COUNT, "integer");
+                    addColumn(db, COLUMN_INDEX_PATH, "text");
+                    break;
+                default:
+                    throw new IllegalStateException("No migration to version " + version);
+            }
+        }
+    }
+
+    private static void addColumn(SQLiteDatabase db, String column, String type) {
+        db.execSQL("alter table " + MATERIAL_TABLE_NAME + " add column " + column + " " + type);
+    }
+}
@@ -0,0 +1,252 @@
+package com.markchan.androidsticker.sample.util;
+
+import com.markchan.andrroidsticker.AtomicFiles;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * 素材包的二进制索引, 替代每次打开都要解析的 materials.xml.
+ *
+ * 文件由定长文件头、定长记录和字符串表组成, 记录中保存原图名和缩略图名在字符串表中的位置.
+ * 可以一次读入整个文件, 不论素材多少都只有一次 IO, 之后按下标直接访问;
+ * 素材很多时也可以只读取文件头, 再按需读取一段记录.
+ *
+ * <pre>
+ * 文件头: magic, version, count, stringTableSize (int)
+ * 记录:   nameOffset, nameLength, thumbnailOffset, thumbnailLength (int) x count
+ * 字符串表: UTF-8
+ * </pre>
+ */
+public final class MaterialIndex {
+
+    public static final String FILE_NAME = "materials.idx";
+
+    static final int MAGIC = 0x4D494458;// "MIDX"
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_INTS = 4;
+    private static final int RECORD_SIZE = RECORD_INTS * 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 按顺序添加素材后写入文件
+     */
+    public static final class Builder {
+
+        private final ArrayList<byte[]> names = new ArrayList<>();
+        private final ArrayList<byte[]> thumbnailNames = new ArrayList<>();
+        private int stringTableSize;
+
+        public Builder add(String name, String thumbnailName) {
+            byte[] nameBytes = name.getBytes(UTF_8);
+            byte[] thumbnailBytes = thumbnailName.getBytes(UTF_8);
+            names.add(nameBytes);
+            thumbnailNames.add(thumbnailBytes);
+            stringTableSize += nameBytes.length + thumbnailBytes.length;
+            return this;
+        }
+
+        /**
+         * 先写临时文件再重命名, 中途失败不会留下损坏的索引
+         */
+        public void write(File file) throws IOException {
+            int count = names.size();
+            ByteBuffer buffer = ByteBuffer.allocate(
+                    HEADER_SIZE + count * RECORD_SIZE + stringTableSize);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(stringTableSize);
+            int offset = 0;
+            for (int i = 0; i < count; i++) {
+                buffer.putInt(offset).putInt(names.get(i).length);
+                offset += names.get(i).length;
+                buffer.putInt(offset).putInt(thumbnailNames.get(i).length);
+                offset += thumbnailNames.get(i).length;
+            }
+            for (int i = 0; i < count; i++) {
+                buffer.put(names.get(i)).put(thumbnailNames.get(i));
+            }
+            buffer.flip();
+
+            File tempFile = AtomicFiles.getTempFile(file);
+            FileOutputStream out = new FileOutputStream(tempFile);
+            boolean success = false;
+            try {
+                while (buffer.hasRemaining()) {
+                    out.getChannel().write(buffer);
+                }
+                out.getFD().sync();
+                out.close();
+                AtomicFiles.commit(tempFile, file);
+                success = true;
+            } finally {
+                if (!success) {
+                    out.close();
+                    tempFile.delete();
+                }
+            }
+        }
+    }
+
+    private final int count;
+    private final int[] records;
+    /** 整个文件内容, 字符串表从 stringTableOffset 开始 */
+    private final byte[] data;
+    private final int stringTableOffset;
+
+    private MaterialIndex(int count, int[] records, byte[] data, int stringTableOffset) {
+        this.count = count;
+        this.records = records;
+        this.data = data;
+        this.stringTableOffset = stringTableOffset;
+    }
+
+    /**
+     * 一次读入整个索引, 格式不符时抛出 IOException
+     */
+    public static MaterialIndex read(File file) throws IOException {
+        byte[] data;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            long length = in.length();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Invalid material index " + file);
+            }
+            data = new byte[(int) length];
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Unsupported material index " + file);
+        }
+        int count = buffer.getInt();
+        int stringTableSize = buffer.getInt();
+        if (count < 0 || stringTableSize < 0
+                || (long) HEADER_SIZE + (long) count * RECORD_SIZE + stringTableSize
+                != data.length) {
+            throw new IOException("Corrupt material index " + file);
+        }
+        int[] records = new int[count * RECORD_INTS];
+        buffer.asIntBuffer().get(records);
+        checkRecords(records, stringTableSize, file);
+        return new MaterialIndex(count, records, data, HEADER_SIZE + count * RECORD_SIZE);
+    }
+
+    /**
+     * 只读取文件头, 返回素材数量
+     */
+    public static int readSize(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return readHeader(in, file)[0];
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 只读取 [from, to) 范围的素材, 记录和对应的字符串各读一次
+     */
+    public static MaterialIndex readRange(File file, int from, int to) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            int[] header = readHeader(in, file);
+            int count = header[0];
+            int stringTableSize = header[1];
+            if (from < 0 || from > to || to > count) {
+                throw new IndexOutOfBoundsException("[" + from + ", " + to + ") of " + count);
+            }
+            byte[] recordBytes = new byte[(to - from) * RECORD_SIZE];
+            in.seek(HEADER_SIZE + (long) from * RECORD_SIZE);
+            in.readFully(recordBytes);
+            int[] records = new int[recordBytes.length / 4];
+            ByteBuffer.wrap(recordBytes).asIntBuffer().get(records);
+            checkRecords(records, stringTableSize, file);
+            if (records.length == 0) {
+                return new MaterialIndex(0, records, new byte[0], 0);
+            }
+
+            // 按顺序写入的索引中, 一段记录的字符串也是连续的一段
+            int start = stringTableSize;
+            int end = 0;
+            for (int i = 0; i < records.length; i += 2) {
+                start = Math.min(start, records[i]);
+                end = Math.max(end, records[i] + records[i + 1]);
+            }
+            byte[] strings = new byte[end - start];
+            in.seek(HEADER_SIZE + (long) count * RECORD_SIZE + start);
+            in.readFully(strings);
+            for (int i = 0; i < records.length; i += 2) {
+                records[i] -= start;
+            }
+            return new MaterialIndex(to - from, records, strings, 0);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 返回 {count, stringTableSize}
+     */
+    private static int[] readHeader(RandomAccessFile in, File file) throws IOException {
+        long length = in.length();
+        if (length < HEADER_SIZE) {
+            throw new IOException("Invalid material index " + file);
+        }
+        byte[] header = new byte[HEADER_SIZE];
+        in.readFully(header);
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Unsupported material index " + file);
+        }
+        int count = buffer.getInt();
+        int stringTableSize = buffer.getInt();
+        if (count < 0 || stringTableSize < 0
+                || (long) HEADER_SIZE + (long) count * RECORD_SIZE + stringTableSize != length) {
+            throw new IOException("Corrupt material index " + file);
+        }
+        return new int[]{count, stringTableSize};
+    }
+
+    private static void checkRecords(int[] records, int stringTableSize, File file)
+            throws IOException {
+        for (int i = 0; i < records.length; i += 2) {
+            int offset = records[i];
+            int length = records[i + 1];
+            if (offset < 0 || length < 0 || (long) offset + length > stringTableSize) {
+                throw new IOException("Corrupt material index " + file);
+            }
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 原图文件名, 不含素材包目录
+     */
+    public String getName(int index) {
+        return getString(index * RECORD_INTS);
+    }
+
+    /**
+     * 缩略图文件名, 不含素材包目录
+     */
+    public String getThumbnailName(int index) {
+        return getString(index * RECORD_INTS + 2);
+    }
+
+    private String getString(int record) {
+        return new String(data, stringTableOffset + records[record], records[record + 1],
+                UTF_8);
+    }
+}
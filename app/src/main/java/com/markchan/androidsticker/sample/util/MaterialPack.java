@@ -0,0 +1,389 @@
+package com.markchan.androidsticker.sample.util;
+
+import com.markchan.andrroidsticker.AtomicFiles;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 不解压直接读取的素材包.
+ *
+ * 打开时只读取一次 zip 的中央目录建立索引, 之后按需读取单个文件: 未压缩(STORED)的文件直接按偏移从
+ * {@link FileChannel} 读取, 压缩的文件边读边解压, 只有真正用到的贴纸才会被解压到磁盘.
+ * 素材包可以位于文件中的任意偏移处, 例如 APK 内未压缩的 assets.
+ */
+public class MaterialPack implements Closeable {
+
+    public static final class Entry {
+
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+        /** 数据起始位置, 读取本地文件头后确定 */
+        private long dataOffset = -1;
+
+        Entry(String name, int method, long crc, long compressedSize, long size,
+                long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isStored() {
+            return method == METHOD_STORED;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final FileChannel channel;
+    private final long offset;
+    private final long length;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private long checksum;
+
+    /**
+     * 打开整个文件作为素材包
+     */
+    public static MaterialPack open(FileChannel channel) throws IOException {
+        return open(channel, 0, channel.size());
+    }
+
+    /**
+     * 打开文件中 [offset, offset + length) 范围内的素材包
+     */
+    public static MaterialPack open(FileChannel channel, long offset, long length)
+            throws IOException {
+        MaterialPack pack = new MaterialPack(channel, offset, length);
+        pack.readCentralDirectory();
+        return pack;
+    }
+
+    private MaterialPack(FileChannel channel, long offset, long length) {
+        this.channel = channel;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries.values()));
+    }
+
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * 素材包内容的校验值: 按文件名顺序对各文件的名称、CRC 和大小计算 CRC32.
+     * 打开时从中央目录计算, 不读取文件内容, 与打包顺序和压缩方式无关
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    private long computeChecksum() {
+        ByteBuffer buffer = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 checksum = new CRC32();
+        for (Entry entry : new TreeMap<>(entries).values()) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            checksum.update(entry.name.getBytes(UTF_8));
+            buffer.clear();
+            buffer.putInt((int) entry.crc).putLong(entry.size);
+            checksum.update(buffer.array(), 0, buffer.position());
+        }
+        return checksum.getValue();
+    }
+
+    /**
+     * 读取文件内容, 可以在多个线程同时读取不同的文件
+     */
+    public InputStream openStream(Entry entry) throws IOException {
+        long dataOffset = getDataOffset(entry);
+        if (entry.isStored()) {
+            return new RegionInputStream(channel, dataOffset, entry.size, false);
+        } else if (entry.method == METHOD_DEFLATED) {
+            final Inflater inflater = new Inflater(true);
+            return new InflaterInputStream(
+                    new RegionInputStream(channel, dataOffset, entry.compressedSize, true),
+                    inflater, STREAM_BUFFER_SIZE) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        inflater.end();
+                        super.close();
+                    }
+                }
+            };
+        }
+        throw new IOException("Unsupported compression method " + entry.method + " of "
+                + entry.name);
+    }
+
+    /**
+     * 解压单个文件到 target, 已存在大小和 CRC 都相同的文件时跳过, 否则(如旧素材包留下的同名文件)覆盖
+     */
+    public void extract(Entry entry, File target) throws IOException {
+        if (target.isFile() && target.length() == entry.size && crc(target) == entry.crc) {
+            return;
+        }
+        File parent = target.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File tempFile = AtomicFiles.getTempFile(target);
+        FileOutputStream out = new FileOutputStream(tempFile);
+        boolean success = false;
+        try {
+            if (entry.isStored()) {
+                FileChannel outChannel = out.getChannel();
+                long position = getDataOffset(entry);
+                long transferred = 0;
+                while (transferred < entry.size) {
+                    long count = channel.transferTo(position + transferred,
+                            entry.size - transferred, outChannel);
+                    if (count <= 0) {
+                        throw new IOException("Unexpected end of " + entry.name);
+                    }
+                    transferred += count;
+                }
+            } else {
+                InputStream in = openStream(entry);
+                try {
+                    byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            out.close();
+            AtomicFiles.commit(tempFile, target);
+            success = true;
+        } finally {
+            if (!success) {
+                out.close();
+                tempFile.delete();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static long crc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    private void readCentralDirectory() throws IOException {
+        // 从末尾向前查找中央目录结束记录, 其后可能跟有注释
+        int tailSize = (int) Math.min(length, EOCD_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(length - tailSize, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("Not a zip file");
+        }
+        int entryCount = tail.getShort(eocd + 10) & 0xFFFF;
+        long centralDirectorySize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long centralDirectoryOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (centralDirectoryOffset + centralDirectorySize > length) {
+            throw new IOException("Invalid central directory, zip64 is not supported");
+        }
+
+        ByteBuffer directory = read(centralDirectoryOffset, (int) centralDirectorySize);
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (position + CENTRAL_HEADER_SIZE > directory.limit()
+                    || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory header " + i);
+            }
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long crc = directory.getInt(position + 16) & 0xFFFFFFFFL;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+            byte[] nameBytes = new byte[nameLength];
+            directory.position(position + CENTRAL_HEADER_SIZE);
+            directory.get(nameBytes);
+            String name = new String(nameBytes, UTF_8);
+            entries.put(name, new Entry(name, method, crc, compressedSize, size,
+                    localHeaderOffset));
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        checksum = computeChecksum();
+    }
+
+    /**
+     * 本地文件头中的扩展字段长度可能与中央目录不同, 第一次读取时解析
+     */
+    private long getDataOffset(Entry entry) throws IOException {
+        synchronized (entry) {
+            if (entry.dataOffset < 0) {
+                ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+                if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                    throw new IOException("Invalid local header of " + entry.name);
+                }
+                int nameLength = header.getShort(26) & 0xFFFF;
+                int extraLength = header.getShort(28) & 0xFFFF;
+                entry.dataOffset = offset + entry.localHeaderOffset + LOCAL_HEADER_SIZE
+                        + nameLength + extraLength;
+            }
+            return entry.dataOffset;
+        }
+    }
+
+    /**
+     * 按素材包内的相对位置读取
+     */
+    private ByteBuffer read(long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of zip");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 读取通道中的一段, 使用绝对位置读取, 不影响通道位置
+     */
+    private static final class RegionInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+        /** Inflater 在 nowrap 模式下需要在数据末尾多读到一个字节 */
+        private boolean trailingByte;
+
+        RegionInputStream(FileChannel channel, long position, long length,
+                boolean trailingByte) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+            this.trailingByte = trailingByte;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                if (trailingByte) {
+                    trailingByte = false;
+                    b[off] = 0;
+                    return 1;
+                }
+                return -1;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, remaining));
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new IOException("Unexpected end of zip entry");
+            }
+            position += count;
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.min(Math.max(n, 0), remaining);
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+    }
+}
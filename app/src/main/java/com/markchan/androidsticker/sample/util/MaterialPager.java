@@ -0,0 +1,309 @@
+package com.markchan.androidsticker.sample.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.MainThread;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分页加载的素材列表.
+ *
+ * 打开时只读取各素材包索引的文件头得到素材数量, 列表滚动到哪一页才在后台读取这一页的记录,
+ * 同时预读下一页. 内存中最多保留 {@link #MAX_RESIDENT_PAGES} 页, 最久未访问的页被丢弃,
+ * 素材再多打开速度和内存占用也不变.
+ */
+public final class MaterialPager {
+
+    private static final String TAG = "MaterialPager";
+
+    public static final int PAGE_SIZE = 60;
+
+    static final int MAX_RESIDENT_PAGES = 5;
+
+    /** 读取失败的页在这段时间内不再重试, 之后每次失败间隔加倍 */
+    static final long RETRY_DELAY_MS = 1000;
+    static final long MAX_RETRY_DELAY_MS = 60 * 1000;
+
+    public interface OnPageLoadedListener {
+
+        /**
+         * 在主线程回调
+         */
+        void onPageLoaded(int page);
+    }
+
+    /**
+     * 按顺序添加素材包, 在后台线程调用
+     */
+    public static final class Builder {
+
+        private final File baseDir;
+        private final ArrayList<Segment> segments = new ArrayList<>();
+        private int size;
+
+        /**
+         * @param baseDir 已解压素材包所在的类别目录
+         */
+        public Builder(File baseDir) {
+            this.baseDir = baseDir;
+        }
+
+        /**
+         * 未解压素材包的目录已在内存中, 直接整体保留
+         */
+        public Builder addPack(MaterialPack pack) {
+            MaterialCatalog catalog = new MaterialCatalog.Builder(baseDir).addPack(pack).build();
+            segments.add(new Segment(size, catalog.size(), catalog, null, null));
+            size += catalog.size();
+            return this;
+        }
+
+        /**
+         * 已解压素材包只读取索引的文件头
+         */
+        public Builder addIndex(String packageName, File indexFile) throws IOException {
+            return addIndex(packageName, indexFile, MaterialIndex.readSize(indexFile));
+        }
+
+        /**
+         * 素材数量已登记时不再读取索引
+         */
+        public Builder addIndex(String packageName, File indexFile, int count) {
+            segments.add(new Segment(size, count, null, packageName, indexFile));
+            size += count;
+            return this;
+        }
+
+        public MaterialPager build() {
+            return new MaterialPager(baseDir, segments.toArray(new Segment[segments.size()]),
+                    size);
+        }
+    }
+
+    /**
+     * 一个素材包在整个列表中占据的范围
+     */
+    private static final class Segment {
+
+        final int start;
+        final int count;
+        final MaterialCatalog catalog;
+        final String packageName;
+        final File indexFile;
+
+        Segment(int start, int count, MaterialCatalog catalog, String packageName,
+                File indexFile) {
+            this.start = start;
+            this.count = count;
+            this.catalog = catalog;
+            this.packageName = packageName;
+            this.indexFile = indexFile;
+        }
+    }
+
+    /**
+     * 读取失败的页, 记录失败次数和下次允许重试的时间
+     */
+    private static final class Failure {
+
+        int count;
+        long retryAt;
+    }
+
+    private final File baseDir;
+    private final Segment[] segments;
+    private final int size;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "MaterialPager");
+        }
+    });
+
+    /** 只在主线程访问, 按访问顺序排列 */
+    private final LinkedHashMap<Integer, MaterialCatalog> pages =
+            new LinkedHashMap<Integer, MaterialCatalog>(0, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, MaterialCatalog> eldest) {
+                    return size() > MAX_RESIDENT_PAGES;
+                }
+            };
+    private final HashSet<Integer> loadingPages = new HashSet<>();
+    /** 读取失败的页及其下次允许重试的时间, 只在主线程访问 */
+    private final HashMap<Integer, Failure> failedPages = new HashMap<>();
+
+    private OnPageLoadedListener onPageLoadedListener;
+    private boolean closed;
+
+    private MaterialPager(File baseDir, Segment[] segments, int size) {
+        this.baseDir = baseDir;
+        this.segments = segments;
+        this.size = size;
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getPageCount() {
+        return (size + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    public void setOnPageLoadedListener(OnPageLoadedListener listener) {
+        onPageLoadedListener = listener;
+    }
+
+    /**
+     * 返回已加载的页, 未加载时开始后台加载并返回 null, 同时预读下一页
+     */
+    @MainThread
+    public MaterialCatalog getPage(int page) {
+        MaterialCatalog catalog = pages.get(page);
+        if (catalog == null) {
+            requestPage(page);
+        }
+        if (page + 1 < getPageCount() && !pages.containsKey(page + 1)) {
+            requestPage(page + 1);
+        }
+        return catalog;
+    }
+
+    /**
+     * 停止加载并释放已加载的页
+     */
+    @MainThread
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        pages.clear();
+        loadingPages.clear();
+        failedPages.clear();
+    }
+
+    /**
+     * 同步读取一页, 一页可能跨越多个素材包
+     */
+    @WorkerThread
+    MaterialCatalog loadPage(int page) throws IOException {
+        int from = page * PAGE_SIZE;
+        int to = Math.min(size, from + PAGE_SIZE);
+        MaterialCatalog.Builder builder = new MaterialCatalog.Builder(baseDir);
+        for (Segment segment : segments) {
+            int start = Math.max(from, segment.start) - segment.start;
+            int end = Math.min(to, segment.start + segment.count) - segment.start;
+            if (start >= end) {
+                continue;
+            }
+            if (segment.catalog != null) {
+                builder.addRange(segment.catalog, start, end);
+            } else {
+                builder.addIndex(segment.packageName,
+                        MaterialIndex.readRange(segment.indexFile, start, end));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * 在调用线程读取一页, 读取完成后交给主线程, 用于界面打开前预热
+     */
+    @WorkerThread
+    public void preloadPage(int page) {
+        if (page < getPageCount()) {
+            deliverPage(page, readPage(page));
+        }
+    }
+
+    private void requestPage(final int page) {
+        Failure failure = failedPages.get(page);
+        if (failure != null && SystemClock.uptimeMillis() < failure.retryAt) {
+            return;
+        }
+        if (closed || !loadingPages.add(page)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deliverPage(page, readPage(page));
+            }
+        });
+    }
+
+    private MaterialCatalog readPage(int page) {
+        try {
+            return loadPage(page);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load page " + page, e);
+            return null;
+        }
+    }
+
+    private void deliverPage(final int page, final MaterialCatalog catalog) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                loadingPages.remove(page);
+                if (closed) {
+                    return;
+                }
+                if (catalog == null) {
+                    onPageFailed(page);
+                    return;
+                }
+                failedPages.remove(page);
+                if (pages.containsKey(page)) {
+                    return;
+                }
+                pages.put(page, catalog);
+                if (onPageLoadedListener != null) {
+                    onPageLoadedListener.onPageLoaded(page);
+                }
+            }
+        });
+    }
+
+    private void onPageFailed(int page) {
+        Failure failure = failedPages.get(page);
+        if (failure == null) {
+            failure = new Failure();
+            failedPages.put(page, failure);
+        }
+        failure.retryAt = SystemClock.uptimeMillis() + retryDelay(failure.count++);
+    }
+
+    /**
+     * 第 failures + 1 次失败后的重试间隔
+     */
+    static long retryDelay(int failures) {
+        if (failures >= 16) {
+            return MAX_RETRY_DELAY_MS;
+        }
+        return Math.min(MAX_RETRY_DELAY_MS, RETRY_DELAY_MS << failures);
+    }
+}
@@ -0,0 +1,154 @@
+package com.markchan.androidsticker.sample.util;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.WorkerThread;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 已安装素材包登记表.
+ *
+ * 整个应用共用一个数据库连接, 所有方法都会访问数据库, 只能在后台线程调用.
+ * 批量写入在一个事务中用预编译语句完成, (type, name) 上有唯一索引, 重复登记只更新登记信息.
+ */
+public class MaterialRegistry {
+
+    private static final String TABLE = MaterialDatabaseHelper.MATERIAL_TABLE_NAME;
+
+    private static MaterialRegistry instance;
+
+    private final MaterialDatabaseHelper databaseHelper;
+
+    /**
+     * 一个已登记的素材包. 旧版本登记的素材包没有校验值、素材数量和索引位置
+     */
+    public static final class Entry {
+
+        /** 校验值未知 */
+        public static final long NO_CHECKSUM = -1;
+
+        private final String name;
+        private final long checksum;
+        private final int itemCount;
+        private final String indexPath;
+
+        public Entry(String name, long checksum, int itemCount, String indexPath) {
+            this.name = name;
+            this.checksum = checksum;
+            this.itemCount = itemCount;
+            this.indexPath = indexPath;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * 素材包的 {@link MaterialPack#getChecksum()}, 未知时返回 {@link #NO_CHECKSUM}
+         */
+        public long getChecksum() {
+            return checksum;
+        }
+
+        public int getItemCount() {
+            return itemCount;
+        }
+
+        /**
+         * 索引文件相对类别目录的路径, 未知时返回 null
+         */
+        public String getIndexPath() {
+            return indexPath;
+        }
+    }
+
+    public static synchronized MaterialRegistry getInstance(Context context) {
+        if (instance == null) {
+            instance = new MaterialRegistry(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MaterialRegistry(Context context) {
+        this(new MaterialDatabaseHelper(context));
+    }
+
+    MaterialRegistry(MaterialDatabaseHelper databaseHelper) {
+        this.databaseHelper = databaseHelper;
+    }
+
+    /**
+     * 关闭数据库连接, 只用于测试
+     */
+    void close() {
+        databaseHelper.close();
+    }
+
+    /**
+     * 登记素材包并记录校验值、素材数量和索引位置, 已登记的只更新这些信息
+     */
+    @WorkerThread
+    public void register(int type, Entry... entries) {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement("insert or ignore into " + TABLE
+                + "(type, name) values (?, ?)");
+        SQLiteStatement update = db.compileStatement("update " + TABLE + " set "
+                + MaterialDatabaseHelper.COLUMN_CHECKSUM + " = ?, "
+                + MaterialDatabaseHelper.COLUMN_ITEM_COUNT + " = ?, "
+                + MaterialDatabaseHelper.COLUMN_INDEX_PATH + " = ?"
+                + " where type = ? and name = ?");
+        db.beginTransaction();
+        try {
+            for (Entry entry : entries) {
+                insert.clearBindings();
+                insert.bindLong(1, type);
+                insert.bindString(2, entry.name);
+                insert.execute();
+
+                update.clearBindings();
+                if (entry.checksum != Entry.NO_CHECKSUM) {
+                    update.bindLong(1, entry.checksum);
+                }
+                update.bindLong(2, entry.itemCount);
+                if (entry.indexPath != null) {
+                    update.bindString(3, entry.indexPath);
+                }
+                update.bindLong(4, type);
+                update.bindString(5, entry.name);
+                update.execute();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+            update.close();
+        }
+    }
+
+    /**
+     * 按登记顺序返回某一类别下的素材包
+     */
+    @WorkerThread
+    public List<Entry> getPackages(int type) {
+        SQLiteDatabase db = databaseHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("select name, "
+                + MaterialDatabaseHelper.COLUMN_CHECKSUM + ", "
+                + MaterialDatabaseHelper.COLUMN_ITEM_COUNT + ", "
+                + MaterialDatabaseHelper.COLUMN_INDEX_PATH + " from " + TABLE
+                + " where type = ? order by _id", new String[]{String.valueOf(type)});
+        try {
+            List<Entry> packages = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                packages.add(new Entry(cursor.getString(0),
+                        cursor.isNull(1) ? Entry.NO_CHECKSUM : cursor.getLong(1),
+                        cursor.getInt(2), cursor.getString(3)));
+            }
+            return packages;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.markchan.androidsticker.sample.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+import com.markchan.andrroidsticker.BitmapCache;
+import com.markchan.andrroidsticker.StickerDecoder;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 素材缩略图异步加载.
+ *
+ * 按 ImageView 的尺寸在后台线程采样解码, 结果放入内存 LRU 缓存, 同时编码保存到磁盘缓存,
+ * 冷启动时直接读取已缩放好的小文件. 素材可以是已解压的文件, 也可以是未解压素材包中的条目.
+ * 每次加载返回一个 {@link Request}, 由 ViewHolder 持有, 列表项被复用时取消旧的请求.
+ */
+public class ThumbnailLoader {
+
+    private static final String TAG = "ThumbnailLoader";
+
+    private static final int THREAD_COUNT = 2;
+
+    private static final String DISK_CACHE_DIR = "decorate_thumbnails";
+    private static final long DISK_CACHE_SIZE = 10 * 1024 * 1024;
+
+    /** 素材包条目的缓存 key 前缀 */
+    private static final String PACK_SCHEME = "pack:";
+
+    /**
+     * 缩略图来源
+     */
+    private abstract static class Thumbnail implements StickerDecoder.Source {
+
+        abstract String getMemoryKey(int reqWidth, int reqHeight);
+
+        /**
+         * 在后台线程调用
+         */
+        abstract String getDiskKey(int reqWidth, int reqHeight);
+    }
+
+    /**
+     * 一次加载请求, 只在主线程取消
+     */
+    public final class Request implements Runnable {
+
+        private final Thumbnail thumbnail;
+        private final String key;
+        private final ImageView imageView;
+        private final int reqWidth;
+        private final int reqHeight;
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        private Request(Thumbnail thumbnail, String key, ImageView imageView, int reqWidth,
+                int reqHeight) {
+            this.thumbnail = thumbnail;
+            this.key = key;
+            this.imageView = imageView;
+            this.reqWidth = reqWidth;
+            this.reqHeight = reqHeight;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            final Bitmap bitmap = decode(thumbnail, reqWidth, reqHeight);
+            if (bitmap == null) {
+                return;
+            }
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    memoryCache.put(key, bitmap);
+                    if (!cancelled) {
+                        imageView.setImageBitmap(bitmap);
+                    }
+                }
+            });
+        }
+
+        public void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private static ThumbnailLoader instance;
+
+    private final File diskCacheDir;
+    private DiskThumbnailCache diskCache;
+    private boolean diskCacheOpened;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREAD_COUNT,
+            THREAD_COUNT, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "ThumbnailLoader");
+                }
+            });
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final LruCache<String, Bitmap> memoryCache;
+
+    /**
+     * 所有素材界面共享, 重新打开时已加载过的缩略图不再解码
+     */
+    public static ThumbnailLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ThumbnailLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ThumbnailLoader(Context context) {
+        diskCacheDir = new File(context.getExternalFilesDir(null), DISK_CACHE_DIR);
+        executor.allowCoreThreadTimeOut(true);
+        // 使用最大可用内存的 1/16
+        memoryCache = new LruCache<String, Bitmap>(
+                (int) (Runtime.getRuntime().maxMemory() / 16)) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return BitmapCache.getBitmapSize(value);
+            }
+        };
+    }
+
+    /**
+     * 加载缩略图到 imageView, 只能在主线程调用, 缓存命中时直接显示并返回 null
+     */
+    public Request load(final String path, ImageView imageView) {
+        return load(new Thumbnail() {
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(path);
+            }
+
+            @Override
+            String getMemoryKey(int reqWidth, int reqHeight) {
+                return BitmapCache.fileKey(path, reqWidth, reqHeight);
+            }
+
+            @Override
+            String getDiskKey(int reqWidth, int reqHeight) {
+                return DiskThumbnailCache.key(new File(path), reqWidth, reqHeight);
+            }
+        }, imageView);
+    }
+
+    /**
+     * 直接从素材包加载缩略图, 不解压到磁盘
+     */
+    public Request load(final MaterialPack pack, final MaterialPack.Entry entry,
+            ImageView imageView) {
+        // 不同素材包可能有同名的条目, 用素材包的校验值区分
+        final String source = PACK_SCHEME + Long.toHexString(pack.getChecksum()) + "/"
+                + entry.getName();
+        return load(new Thumbnail() {
+            @Override
+            public InputStream open() throws IOException {
+                return pack.openStream(entry);
+            }
+
+            @Override
+            String getMemoryKey(int reqWidth, int reqHeight) {
+                return BitmapCache.fileKey(source, reqWidth, reqHeight);
+            }
+
+            @Override
+            String getDiskKey(int reqWidth, int reqHeight) {
+                return DiskThumbnailCache.key(source, entry.getCrc(), reqWidth, reqHeight);
+            }
+        }, imageView);
+    }
+
+    private Request load(Thumbnail thumbnail, ImageView imageView) {
+        int reqWidth = getTargetSize(imageView.getWidth(),
+                imageView.getLayoutParams() != null ? imageView.getLayoutParams().width : 0);
+        int reqHeight = getTargetSize(imageView.getHeight(),
+                imageView.getLayoutParams() != null ? imageView.getLayoutParams().height : 0);
+        String key = thumbnail.getMemoryKey(reqWidth, reqHeight);
+
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            imageView.setImageBitmap(bitmap);
+            return null;
+        }
+        // 清除复用列表项上的旧图
+        imageView.setImageDrawable(null);
+        Request request = new Request(thumbnail, key, imageView, reqWidth, reqHeight);
+        request.future = executor.submit(request);
+        return request;
+    }
+
+    public void clearMemoryCache() {
+        memoryCache.evictAll();
+    }
+
+    /**
+     * 先读磁盘缓存, 没有时从原图采样解码并写入磁盘缓存
+     */
+    @WorkerThread
+    private Bitmap decode(Thumbnail thumbnail, int reqWidth, int reqHeight) {
+        DiskThumbnailCache cache = getDiskCache();
+        String key = thumbnail.getDiskKey(reqWidth, reqHeight);
+        if (cache != null) {
+            try {
+                File file = cache.get(key);
+                if (file != null) {
+                    Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+                    if (bitmap != null) {
+                        return bitmap;
+                    }
+                    cache.remove(key);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read thumbnail cache", e);
+            }
+        }
+
+        // 内存缓存淘汰的缩略图可能仍在列表中显示, 不能归还图片池, 所以解码时也不从图片池借用
+        final Bitmap bitmap = StickerDecoder.decodeSampledBitmap(thumbnail, reqWidth,
+                reqHeight, false);
+        if (bitmap != null && cache != null) {
+            try {
+                cache.put(key, new DiskThumbnailCache.Editor() {
+                    @Override
+                    public void writeTo(OutputStream out) throws IOException {
+                        // 素材带透明通道, 使用 PNG
+                        if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                            throw new IOException("Failed to compress thumbnail");
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write thumbnail cache", e);
+            }
+        }
+        return bitmap;
+    }
+
+    @WorkerThread
+    private synchronized DiskThumbnailCache getDiskCache() {
+        if (!diskCacheOpened) {
+            diskCacheOpened = true;
+            try {
+                diskCache = DiskThumbnailCache.open(diskCacheDir, DISK_CACHE_SIZE);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to open thumbnail cache", e);
+            }
+        }
+        return diskCache;
+    }
+
+    /**
+     * 已测量时使用测量尺寸, 否则使用布局中的固定尺寸, 都没有时不限制
+     */
+    private static int getTargetSize(int measuredSize, int layoutSize) {
+        return measuredSize > 0 ? measuredSize : Math.max(layoutSize, 0);
+    }
+}
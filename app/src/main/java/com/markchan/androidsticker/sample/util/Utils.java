@@ -1,189 +1,187 @@
 package com.markchan.androidsticker.sample.util;
 
 import android.content.Context;
-import android.util.Log;
+import android.content.res.AssetFileDescriptor;
 import android.util.Xml;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 import org.xmlpull.v1.XmlPullParser;
-import org.xmlpull.v1.XmlSerializer;
 
 /**
  * @author chenkaijian
  */
 public class Utils {
 
+    private static final String PACK_SUFFIX = ".zip";
+
+    private static final HashMap<String, MaterialPack> assetPacks = new HashMap<>();
+
+    private static ZipExtractor zipExtractor;
+
     /**
-     * 解压Assets中的文件
+     * 打开 Assets 中的素材包, 不复制也不解压, 只读取一次目录. 素材包在 APK 中必须不压缩存放,
+     * 在后台线程调用
      */
-    public static void unZip(Context context, String assetName, String outputDirectory)
+    public static MaterialPack openAssetPack(Context context, String assetName)
             throws IOException {
-        //创建解压目标目录
-        File file = new File(outputDirectory);
-        //如果目标目录不存在，则创建
-        if (!file.exists()) {
-            file.mkdirs();
-        }
-        InputStream inputStream = null;
-        //打开压缩文件
-        inputStream = context.getAssets().open(assetName);
-        ZipInputStream zipInputStream = new ZipInputStream(inputStream);
-        //读取一个进入点
-        ZipEntry zipEntry = zipInputStream.getNextEntry();
-        //使用1Mbuffer
-        byte[] buffer = new byte[1024 * 1024];
-        //解压时字节计数
-        int count = 0;
-        //如果进入点为空说明已经遍历完所有压缩包中文件和目录
-        while (zipEntry != null) {
-            //如果是一个目录
-            if (zipEntry.isDirectory()) {
-                //String name = zipEntry.getName();
-                //name = name.substring(0, name.length() - 1);
-                file = new File(outputDirectory + File.separator + zipEntry.getName());
-                file.mkdir();
-            } else {
-                //如果是文件
-                file = new File(outputDirectory + File.separator
-                        + zipEntry.getName());
-                //创建该文件
-                file.createNewFile();
-                FileOutputStream fileOutputStream = new FileOutputStream(file);
-                while ((count = zipInputStream.read(buffer)) > 0) {
-                    fileOutputStream.write(buffer, 0, count);
+        synchronized (assetPacks) {
+            MaterialPack pack = assetPacks.get(assetName);
+            if (pack == null) {
+                AssetFileDescriptor descriptor = context.getAssets().openFd(assetName);
+                FileChannel channel = descriptor.createInputStream().getChannel();
+                try {
+                    pack = MaterialPack.open(channel, descriptor.getStartOffset(),
+                            descriptor.getLength());
+                } catch (IOException e) {
+                    channel.close();
+                    throw e;
                 }
-                fileOutputStream.close();
+                assetPacks.put(assetName, pack);
             }
-            //定位到下一个文件入口
-            zipEntry = zipInputStream.getNextEntry();
+            return pack;
+        }
+    }
+
+    /**
+     * 只解压选中的素材到相应类别的目录下, 已解压过时直接返回, 在后台线程调用
+     */
+    public static File extractMaterial(Context context, MaterialPack pack, String name,
+            int materialType) throws IOException {
+        MaterialPack.Entry entry = pack.getEntry(name);
+        if (entry == null) {
+            throw new IOException("No material " + name);
+        }
+        File dir = new File(context.getExternalFilesDir(null),
+                getMaterialDescription(materialType));
+        File target = new File(dir, name);
+        // 拒绝解压到目标目录之外的条目
+        if (!target.getCanonicalPath().startsWith(dir.getCanonicalPath() + File.separator)) {
+            throw new IOException("Illegal material " + name);
+        }
+        pack.extract(entry, target);
+        return target;
+    }
+
+    /**
+     * 安装下载的素材包: 多线程解压到相应类别的目录下, 生成索引后登记校验值、素材数量和索引位置,
+     * 返回包名, 在后台线程调用. 包名取自文件名去掉 .zip, 素材包内的文件位于与包名同名的目录中
+     */
+    public static String installPack(Context context, File packFile, int materialType,
+            ZipExtractor.ProgressListener listener) throws IOException {
+        String packageName = getPackageName(packFile);
+        if (packageName == null) {
+            throw new IOException("Invalid material pack " + packFile);
+        }
+        File dir = new File(context.getExternalFilesDir(null),
+                getMaterialDescription(materialType));
+        String indexPath = packageName + "/" + MaterialIndex.FILE_NAME;
+        long checksum;
+        int count;
+        MaterialPack pack = MaterialPack.open(new RandomAccessFile(packFile, "r").getChannel());
+        try {
+            extractor().extract(packFile, dir, listener);
+            // 安装时生成索引, 加载素材列表时只读取索引
+            count = writePackIndex(pack, packageName, new File(dir, indexPath));
+            checksum = pack.getChecksum();
+        } finally {
+            pack.close();
         }
-        zipInputStream.close();
+        MaterialRegistry.getInstance(context).register(materialType,
+                new MaterialRegistry.Entry(packageName, checksum, count, indexPath));
+        return packageName;
     }
 
     /**
-     * 解压缩功能.
-     * 将zipFile文件解压到folderPath目录下.
+     * 按素材包目录为包名目录下的素材生成索引, 与 {@link MaterialCatalog.Builder#addPack} 一样
+     * 按 thumbnail_ 前缀配对缩略图, 没有缩略图的跳过. 返回素材数量
      */
-    public static int upZipFile(File zipFile, String folderPath) throws IOException {
-        //public static void upZipFile() throws Exception{
-        ZipFile zfile = new ZipFile(zipFile);
-        Enumeration zList = zfile.entries();
-        ZipEntry ze = null;
-        byte[] buf = new byte[1024];
-        while (zList.hasMoreElements()) {
-            ze = (ZipEntry) zList.nextElement();
-            if (ze.isDirectory()) {
-                Log.d("upZipFile", "ze.getName() = " + ze.getName());
-                String dirstr = folderPath + ze.getName();
-                //dirstr.trim();
-                dirstr = new String(dirstr.getBytes("8859_1"), "GB2312");
-                Log.d("upZipFile", "str = " + dirstr);
-                File f = new File(dirstr);
-                f.mkdir();
+    static int writePackIndex(MaterialPack pack, String packageName, File indexFile)
+            throws IOException {
+        String prefix = packageName + "/";
+        MaterialIndex.Builder builder = new MaterialIndex.Builder();
+        int count = 0;
+        for (MaterialPack.Entry entry : pack.getEntries()) {
+            String entryName = entry.getName();
+            if (entry.isDirectory() || !entryName.startsWith(prefix)) {
                 continue;
             }
-            Log.d("upZipFile", "ze.getName() = " + ze.getName());
-            OutputStream os = new BufferedOutputStream(
-                    new FileOutputStream(getRealFileName(folderPath, ze.getName())));
-            InputStream is = new BufferedInputStream(zfile.getInputStream(ze));
-            int readLen = 0;
-            while ((readLen = is.read(buf, 0, 1024)) != -1) {
-                os.write(buf, 0, readLen);
+            String name = entryName.substring(prefix.length());
+            if (name.indexOf('/') >= 0 || name.startsWith("thumbnail")
+                    || pack.getEntry(prefix + "thumbnail_" + name) == null) {
+                continue;
             }
-            is.close();
-            os.close();
+            builder.add(name, "thumbnail_" + name);
+            count++;
         }
-        zfile.close();
-        Log.d("upZipFile", "finish");
-        return 0;
+        builder.write(indexFile);
+        return count;
     }
 
     /**
-     * 给定根目录，返回一个相对路径所对应的实际文件名.
-     *
-     * @param baseDir 指定根目录
-     * @param absFileName 相对路径名，来自于ZipEntry中的name
-     * @return java.io.File 实际的文件
+     * 素材包文件名去掉 .zip 后的包名, 不是 .zip 文件时返回 null
      */
-    public static File getRealFileName(String baseDir, String absFileName) {
-        String[] dirs = absFileName.split("/");
-        File ret = new File(baseDir);
-        String substr = null;
-        if (dirs.length > 1) {
-            for (int i = 0; i < dirs.length - 1; i++) {
-                substr = dirs[i];
-                try {
-                    //substr.trim();
-                    substr = new String(substr.getBytes("8859_1"), "GB2312");
-                } catch (UnsupportedEncodingException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                }
-                ret = new File(ret, substr);
-            }
-            Log.d("upZipFile", "1ret = " + ret);
-            if (!ret.exists()) {
-                ret.mkdirs();
-            }
-            substr = dirs[dirs.length - 1];
-            try {
-                //substr.trim();
-                substr = new String(substr.getBytes("8859_1"), "GB2312");
-                Log.d("upZipFile", "substr = " + substr);
-            } catch (UnsupportedEncodingException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
+    static String getPackageName(File packFile) {
+        String name = packFile.getName();
+        if (name.length() <= PACK_SUFFIX.length() || !name.endsWith(PACK_SUFFIX)) {
+            return null;
+        }
+        return name.substring(0, name.length() - PACK_SUFFIX.length());
+    }
 
-            ret = new File(ret, substr);
-            Log.d("upZipFile", "2ret = " + ret);
-            return ret;
+    private static synchronized ZipExtractor extractor() {
+        if (zipExtractor == null) {
+            zipExtractor = new ZipExtractor();
         }
-        return ret;
+        return zipExtractor;
     }
 
     /**
-     * 解压素材包并自动生成配置文件
+     * 返回已解压素材包的索引文件. 下载的素材包在安装时已生成索引, 旧版本安装的素材包
+     * 只有 materials.xml, 第一次加载时(通常在启动预热中)解析一次后生成索引, 之后直接读取.
+     * 缺少名字的素材跳过
      */
-    public static void unZipMaterials(Context context, String fileName, int materialType) {
+    public static File prepareMaterialIndex(File packageDir) throws IOException {
+        File indexFile = new File(packageDir, MaterialIndex.FILE_NAME);
+        if (indexFile.isFile()) {
+            return indexFile;
+        }
+
+        ArrayList<HashMap<String, String>> list;
+        InputStream in = new FileInputStream(new File(packageDir, "materials.xml"));
         try {
-            String typeName = getMaterialDescription(materialType);
-            // 获取Android/data/包名/files/目录
-            File dir = context.getExternalFilesDir(null);
-            if (!dir.exists()) {
-                dir.mkdirs();
+            list = parseXML(in, "");
+        } finally {
+            in.close();
+        }
+        if (list == null) {
+            throw new IOException("Invalid materials.xml in " + packageDir);
+        }
+        MaterialIndex.Builder builder = new MaterialIndex.Builder();
+        for (HashMap<String, String> map : list) {
+            String name = stripPackagePrefix(map.get("name"));
+            String thumbnailName = stripPackagePrefix(map.get("thumbnailname"));
+            if (name != null && thumbnailName != null) {
+                builder.add(name, thumbnailName);
             }
-            // 将素材压缩包解压至相应类别的目录下
-            Utils.unZip(context, fileName + ".zip", dir.getAbsolutePath() + "/" + typeName);
+        }
+        builder.write(indexFile);
+        return indexFile;
+    }
 
-            // 遍历自动生成配置文件
-            File file = new File(dir.getAbsolutePath() + "/" + typeName + "/" + fileName);
-            File[] files = file.listFiles();
-            ArrayList<HashMap<String, String>> list = new ArrayList<HashMap<String, String>>();
-            for (int i = 0; i < files.length; i++) {
-                if (!files[i].getName().toString().startsWith("thumbnail")) {
-                    HashMap<String, String> map = new HashMap<String, String>();
-                    map.put("name", files[i].getName());// 原图名字
-                    map.put("thumbnailname", "thumbnail_" + files[i].getName());// 缩略图名字
-                    list.add(map);
-                }
-            }
-            Utils.writeXML(list, dir.getAbsolutePath() + "/" + typeName + "/" + fileName + "/");
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * 去掉 parseXML 在空前缀时加上的 "/", 名字缺失或为空时返回 null
+     */
+    static String stripPackagePrefix(String name) {
+        if (name == null || name.length() < 2 || name.charAt(0) != '/') {
+            return null;
         }
+        return name.substring(1);
     }
 
     /**
@@ -266,63 +264,4 @@ public class Utils {
 
         return null;
     }
-
-    /**
-     * 创建xml文件
-     */
-    public static boolean writeXML(ArrayList<HashMap<String, String>> data, String localDir) {
-        boolean bFlag = false;
-        FileOutputStream fileos = null;
-
-        File newXmlFile = new File(localDir + "materials.xml");
-        try {
-            if (newXmlFile.exists()) {
-                bFlag = newXmlFile.delete();
-            } else {
-                bFlag = true;
-            }
-
-            if (bFlag) {
-
-                if (newXmlFile.createNewFile()) {
-                    fileos = new FileOutputStream(newXmlFile);
-
-                    // we create a XmlSerializer in order to write xml data
-                    XmlSerializer serializer = Xml.newSerializer();
-
-                    // we set the FileOutputStream as output for the serializer,
-                    // using UTF-8 encoding
-                    serializer.setOutput(fileos, "UTF-8");
-
-                    // <?xml version=”1.0″ encoding=”UTF-8″>
-                    // Write <?xml declaration with encoding (if encoding not
-                    // null) and standalone flag (if stan dalone not null)
-                    // This method can only be called just after setOutput.
-                    serializer.startDocument("UTF-8", null);
-
-                    // start a tag called "materials"
-                    serializer.startTag(null, "materials");
-                    for (HashMap<String, String> map : data) {
-                        serializer.startTag(null, "material");
-                        serializer.startTag(null, "name");
-                        serializer.text(map.get("name"));
-                        serializer.endTag(null, "name");
-                        serializer.startTag(null, "thumbnailname");
-                        serializer.text(map.get("thumbnailname"));
-                        serializer.endTag(null, "thumbnailname");
-                        serializer.endTag(null, "material");
-                    }
-                    serializer.endTag(null, "materials");
-                    serializer.endDocument();
-
-                    // write xml data into the FileOutputStream
-                    serializer.flush();
-                    // finally we close the file stream
-                    fileos.close();
-                }
-            }
-        } catch (Exception e) {
-        }
-        return bFlag;
-    }
 }
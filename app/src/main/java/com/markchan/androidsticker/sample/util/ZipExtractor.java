@@ -0,0 +1,231 @@
+package com.markchan.androidsticker.sample.util;
+
+import com.markchan.andrroidsticker.AtomicFiles;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 素材包解压.
+ *
+ * 用 {@link ZipFile} 随机读取压缩包, 各文件在固定大小的线程池中并行解压, 经 NIO 通道写入目标目录,
+ * 读写缓冲区在线程间复用. 每个文件先写入临时文件再重命名, 解压中断不会留下不完整的素材.
+ */
+public class ZipExtractor {
+
+    public interface ProgressListener {
+
+        /**
+         * 在解压线程回调
+         */
+        void onProgress(long extractedBytes, long totalBytes, int extractedEntries,
+                int totalEntries);
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ThreadPoolExecutor executor;
+
+    /** 每个线程同一时刻只使用一个缓冲区 */
+    private final BlockingQueue<ByteBuffer> bufferPool;
+
+    public ZipExtractor() {
+        this(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 4)));
+    }
+
+    public ZipExtractor(int threadCount) {
+        executor = new ThreadPoolExecutor(threadCount, threadCount, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "ZipExtractor #" + count.incrementAndGet());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        bufferPool = new ArrayBlockingQueue<>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            bufferPool.add(ByteBuffer.allocate(BUFFER_SIZE));
+        }
+    }
+
+    /**
+     * 解压 zip 至 outputDirectory, 阻塞直到全部完成. 任一文件失败时停止其余文件并抛出异常
+     */
+    public void extract(File zip, File outputDirectory, final ProgressListener listener)
+            throws IOException {
+        final ZipFile zipFile = new ZipFile(zip);
+        try {
+            String outputPath = outputDirectory.getCanonicalPath() + File.separator;
+            List<ZipEntry> fileEntries = new ArrayList<>();
+            long totalBytes = 0;
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                File target = new File(outputDirectory, entry.getName());
+                // 拒绝解压到目标目录之外的条目
+                if (!target.getCanonicalPath().startsWith(outputPath)) {
+                    throw new IOException("Illegal zip entry " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    mkdirs(target);
+                } else {
+                    mkdirs(target.getParentFile());
+                    fileEntries.add(entry);
+                    totalBytes += Math.max(entry.getSize(), 0);
+                }
+            }
+
+            final int totalEntries = fileEntries.size();
+            final long total = totalBytes;
+            final AtomicLong extractedBytes = new AtomicLong();
+            final AtomicInteger extractedEntries = new AtomicInteger();
+            final AtomicBoolean aborted = new AtomicBoolean();
+            List<Future<Void>> futures = new ArrayList<>(totalEntries);
+            for (final ZipEntry entry : fileEntries) {
+                final File target = new File(outputDirectory, entry.getName());
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        if (aborted.get()) {
+                            return null;
+                        }
+                        long bytes;
+                        try {
+                            bytes = extractEntry(zipFile, entry, target, aborted);
+                        } catch (Exception e) {
+                            // 通知其余文件尽快结束
+                            aborted.set(true);
+                            throw e;
+                        }
+                        long extracted = extractedBytes.addAndGet(bytes);
+                        int count = extractedEntries.incrementAndGet();
+                        if (listener != null) {
+                            listener.onProgress(extracted, total, count, totalEntries);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            awaitAll(futures, aborted);
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * 线程池空闲后会自动结束线程, 不再使用时也可以主动关闭
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private long extractEntry(ZipFile zipFile, ZipEntry entry, File target,
+            AtomicBoolean aborted) throws IOException, InterruptedException {
+        File tempFile = AtomicFiles.getTempFile(target);
+        ByteBuffer buffer = bufferPool.take();
+        InputStream in = null;
+        FileOutputStream out = null;
+        long bytes = 0;
+        boolean success = false;
+        try {
+            in = zipFile.getInputStream(entry);
+            out = new FileOutputStream(tempFile);
+            ReadableByteChannel inChannel = Channels.newChannel(in);
+            FileChannel outChannel = out.getChannel();
+            buffer.clear();
+            while (inChannel.read(buffer) != -1) {
+                if (aborted.get()) {
+                    throw new IOException("Extraction aborted");
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    bytes += outChannel.write(buffer);
+                }
+                buffer.clear();
+            }
+            out.close();
+            AtomicFiles.commit(tempFile, target);
+            success = true;
+            return bytes;
+        } finally {
+            bufferPool.put(buffer);
+            if (in != null) {
+                in.close();
+            }
+            if (!success) {
+                if (out != null) {
+                    out.close();
+                }
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * 等待所有文件结束, 即使中途失败也要等已开始的文件结束, 之后才能关闭 ZipFile
+     */
+    private static void awaitAll(List<Future<Void>> futures, AtomicBoolean aborted)
+            throws IOException {
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Future<Void> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                        aborted.set(true);
+                    }
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    if (failure == null) {
+                        failure = e;
+                        aborted.set(true);
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw new IOException(failure);
+        }
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.markchan.androidsticker.sample.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 缩略图磁盘缓存单元测试.
+ */
+public class DiskThumbnailCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("thumbnails", "");
+        dir.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void putThenGet() throws Exception {
+        DiskThumbnailCache cache = DiskThumbnailCache.open(dir, 1024);
+        assertNull(cache.get("a"));
+
+        assertTrue(cache.put("a", bytes(100)));
+        File file = cache.get("a");
+        assertNotNull(file);
+        assertEquals(100, file.length());
+        assertEquals(100, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void reopen_restoresEntriesFromJournal() throws Exception {
+        DiskThumbnailCache cache = DiskThumbnailCache.open(dir, 1024);
+        cache.put("a", bytes(100));
+        cache.put("b", bytes(200));
+        cache.remove("a");
+        cache.close();
+
+        cache = DiskThumbnailCache.open(dir, 1024);
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertEquals(1, cache.entryCount());
+        assertEquals(200, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() throws Exception {
+        DiskThumbnailCache cache = DiskThumbnailCache.open(dir, 300);
+        cache.put("a", bytes(100));
+        cache.put("b", bytes(100));
+        cache.put("c", bytes(100));
+        cache.get("a");
+        cache.put("d", bytes(100));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertFalse(new File(dir, "b").exists());
+        assertEquals(300, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void reopen_keepsAccessOrder() throws Exception {
+        DiskThumbnailCache cache = DiskThumbnailCache.open(dir, 300);
+        cache.put("a", bytes(100));
+        cache.put("b", bytes(100));
+        cache.put("c", bytes(100));
+        cache.get("a");
+        cache.close();
+
+        cache = DiskThumbnailCache.open(dir, 300);
+        cache.put("d", bytes(100));
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        cache.close();
+    }
+
+    @Test
+    public void reopen_ignoresTruncatedJournalAndStrayFiles() throws Exception {
+        DiskThumbnailCache cache = DiskThumbnailCache.open(dir, 1024);
+        cache.put("a", bytes(100));
+        cache.close();
+        FileOutputStream journal = new FileOutputStream(
+                new File(dir, DiskThumbnailCache.JOURNAL_FILE), true);
+        journal.write("P b".getBytes("UTF-8"));
+        journal.close();
+        File stray = new File(dir, "a.1.tmp");
+        stray.createNewFile();
+
+        cache = DiskThumbnailCache.open(dir, 1024);
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertFalse(stray.exists());
+        cache.close();
+    }
+
+    @Test
+    public void key_changesWithSourceAndSize() throws Exception {
+        dir.mkdirs();
+        File source = new File(dir, "source.png");
+        source.createNewFile();
+        source.setLastModified(1000000L);
+
+        String key = DiskThumbnailCache.key(source, 78, 78);
+        assertEquals(key, DiskThumbnailCache.key(source, 78, 78));
+        assertNotEquals(key, DiskThumbnailCache.key(source, 156, 156));
+        source.setLastModified(2000000L);
+        assertNotEquals(key, DiskThumbnailCache.key(source, 78, 78));
+    }
+
+    private static DiskThumbnailCache.Editor bytes(final int length) {
+        return new DiskThumbnailCache.Editor() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(new byte[length]);
+            }
+        };
+    }
+}
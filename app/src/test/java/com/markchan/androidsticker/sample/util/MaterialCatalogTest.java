@@ -0,0 +1,141 @@
+package com.markchan.androidsticker.sample.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 素材列表单元测试.
+ */
+public class MaterialCatalogTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("catalog", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void build_combinesPackAndExtractedMaterials() throws Exception {
+        File zip = new File(dir, "pack.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        put(out, "zhuangban/");
+        put(out, "zhuangban/thumbnail_a.png");
+        put(out, "zhuangban/a.png");
+        // 没有缩略图的素材不显示
+        put(out, "zhuangban/b.png");
+        out.close();
+        MaterialPack pack = MaterialPack.open(new RandomAccessFile(zip, "r").getChannel());
+
+        File indexFile = new File(dir, MaterialIndex.FILE_NAME);
+        new MaterialIndex.Builder()
+                .add("c.png", "thumbnail_c.png")
+                .add("d.png", "thumbnail_d.png")
+                .write(indexFile);
+
+        File baseDir = new File(dir, "decorate");
+        MaterialCatalog catalog = new MaterialCatalog.Builder(baseDir)
+                .addPack(pack)
+                .addIndex("cute", MaterialIndex.read(indexFile))
+                .build();
+        try {
+            assertEquals(3, catalog.size());
+
+            assertTrue(catalog.isPacked(0));
+            assertSame(pack, catalog.getPack(0));
+            assertEquals("zhuangban/a.png", catalog.getName(0));
+            assertEquals("zhuangban/thumbnail_a.png", catalog.getThumbnailEntry(0).getName());
+
+            assertFalse(catalog.isPacked(1));
+            assertNull(catalog.getPack(1));
+            assertNull(catalog.getThumbnailEntry(1));
+            assertEquals("cute/c.png", catalog.getName(1));
+            assertEquals(new File(baseDir, "cute/c.png"), catalog.getFile(1));
+            assertEquals(new File(baseDir, "cute/thumbnail_d.png").getPath(),
+                    catalog.getThumbnailPath(2));
+            // 缩略图路径只拼接一次
+            assertSame(catalog.getThumbnailPath(2), catalog.getThumbnailPath(2));
+        } finally {
+            pack.close();
+        }
+    }
+
+    @Test
+    public void build_growsPastInitialCapacity() throws Exception {
+        File indexFile = new File(dir, MaterialIndex.FILE_NAME);
+        MaterialIndex.Builder builder = new MaterialIndex.Builder();
+        for (int i = 0; i < 100; i++) {
+            builder.add(i + ".png", "thumbnail_" + i + ".png");
+        }
+        builder.write(indexFile);
+
+        MaterialCatalog catalog = new MaterialCatalog.Builder(dir)
+                .addIndex("a", MaterialIndex.read(indexFile))
+                .addIndex("b", MaterialIndex.read(indexFile))
+                .build();
+
+        assertEquals(200, catalog.size());
+        assertEquals("a/0.png", catalog.getName(0));
+        assertEquals("a/99.png", catalog.getName(99));
+        assertEquals("b/0.png", catalog.getName(100));
+        assertEquals("b/99.png", catalog.getName(199));
+    }
+
+    @Test
+    public void addRange_copiesSlotsAndSharesPrefixes() throws Exception {
+        File indexFile = new File(dir, MaterialIndex.FILE_NAME);
+        new MaterialIndex.Builder()
+                .add("0.png", "thumbnail_0.png")
+                .add("1.png", "thumbnail_1.png")
+                .add("2.png", "thumbnail_2.png")
+                .write(indexFile);
+        MaterialCatalog whole = new MaterialCatalog.Builder(dir)
+                .addIndex("a", MaterialIndex.read(indexFile))
+                .build();
+
+        // 模拟跨越两个素材包的一页
+        MaterialCatalog page = new MaterialCatalog.Builder(dir)
+                .addRange(whole, 1, 3)
+                .addIndex("b", MaterialIndex.readRange(indexFile, 0, 1))
+                .build();
+
+        assertEquals(3, page.size());
+        assertEquals("a/1.png", page.getName(0));
+        assertEquals("a/2.png", page.getName(1));
+        assertEquals("b/0.png", page.getName(2));
+        assertEquals(new File(dir, "a/thumbnail_2.png").getPath(), page.getThumbnailPath(1));
+    }
+
+    private static void put(ZipOutputStream out, String name) throws Exception {
+        out.putNextEntry(new ZipEntry(name));
+        if (!name.endsWith("/")) {
+            out.write(name.getBytes("UTF-8"));
+        }
+        out.closeEntry();
+    }
+}
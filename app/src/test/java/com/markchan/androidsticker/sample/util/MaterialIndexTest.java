@@ -0,0 +1,159 @@
+package com.markchan.androidsticker.sample.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 素材包二进制索引单元测试.
+ */
+public class MaterialIndexTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("index", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void writeThenRead() throws Exception {
+        File file = new File(dir, MaterialIndex.FILE_NAME);
+        new MaterialIndex.Builder()
+                .add("keai_01.png", "thumbnail_keai_01.png")
+                .add("可爱_02.png", "thumbnail_可爱_02.png")
+                .add("", "")
+                .write(file);
+
+        MaterialIndex index = MaterialIndex.read(file);
+        assertEquals(3, index.size());
+        assertEquals("keai_01.png", index.getName(0));
+        assertEquals("thumbnail_keai_01.png", index.getThumbnailName(0));
+        assertEquals("可爱_02.png", index.getName(1));
+        assertEquals("thumbnail_可爱_02.png", index.getThumbnailName(1));
+        assertEquals("", index.getName(2));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void read_largeIndex() throws Exception {
+        File file = new File(dir, MaterialIndex.FILE_NAME);
+        MaterialIndex.Builder builder = new MaterialIndex.Builder();
+        for (int i = 0; i < 10000; i++) {
+            builder.add("sticker_" + i + ".png", "thumbnail_sticker_" + i + ".png");
+        }
+        builder.write(file);
+
+        MaterialIndex index = MaterialIndex.read(file);
+        assertEquals(10000, index.size());
+        assertEquals("sticker_0.png", index.getName(0));
+        assertEquals("thumbnail_sticker_9999.png", index.getThumbnailName(9999));
+    }
+
+    @Test
+    public void readRange_readsOnlyRequestedRecords() throws Exception {
+        File file = new File(dir, MaterialIndex.FILE_NAME);
+        MaterialIndex.Builder builder = new MaterialIndex.Builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add("sticker_" + i + ".png", "thumbnail_sticker_" + i + ".png");
+        }
+        builder.write(file);
+
+        assertEquals(1000, MaterialIndex.readSize(file));
+        MaterialIndex page = MaterialIndex.readRange(file, 120, 180);
+        assertEquals(60, page.size());
+        assertEquals("sticker_120.png", page.getName(0));
+        assertEquals("thumbnail_sticker_179.png", page.getThumbnailName(59));
+        assertEquals(0, MaterialIndex.readRange(file, 1000, 1000).size());
+        assertEquals("sticker_999.png", MaterialIndex.readRange(file, 990, 1000).getName(9));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void readRange_rejectsRangePastEnd() throws Exception {
+        File file = new File(dir, MaterialIndex.FILE_NAME);
+        new MaterialIndex.Builder()
+                .add("a.png", "thumbnail_a.png")
+                .write(file);
+
+        MaterialIndex.readRange(file, 0, 2);
+    }
+
+    @Test
+    public void read_emptyIndex() throws Exception {
+        File file = new File(dir, MaterialIndex.FILE_NAME);
+        new MaterialIndex.Builder().write(file);
+
+        assertEquals(0, MaterialIndex.read(file).size());
+    }
+
+    @Test
+    public void read_rejectsTruncatedFile() throws Exception {
+        File file = new File(dir, MaterialIndex.FILE_NAME);
+        new MaterialIndex.Builder()
+                .add("a.png", "thumbnail_a.png")
+                .write(file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        assertRejected(file);
+    }
+
+    @Test
+    public void read_rejectsOtherFormat() throws Exception {
+        File file = new File(dir, MaterialIndex.FILE_NAME);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.writeBytes("<?xml version='1.0' encoding='UTF-8' ?><materials/>");
+        raf.close();
+
+        assertRejected(file);
+    }
+
+    @Test
+    public void read_rejectsRecordOutsideStringTable() throws Exception {
+        File file = new File(dir, MaterialIndex.FILE_NAME);
+        new MaterialIndex.Builder()
+                .add("a.png", "thumbnail_a.png")
+                .write(file);
+        // 第一条记录的 nameLength
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(20);
+        raf.writeInt(1000);
+        raf.close();
+
+        assertRejected(file);
+    }
+
+    private static void assertRejected(File file) {
+        try {
+            MaterialIndex.read(file);
+            fail();
+        } catch (IOException expected) {
+        }
+        try {
+            MaterialIndex.readRange(file, 0, 1);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.markchan.androidsticker.sample.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 不解压读取素材包单元测试.
+ */
+public class MaterialPackTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("pack", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(dir);
+    }
+
+    @Test
+    public void open_indexesCentralDirectory() throws Exception {
+        File zip = new File(dir, "pack.zip");
+        writePack(new FileOutputStream(zip), "comment");
+
+        MaterialPack pack = MaterialPack.open(new RandomAccessFile(zip, "r").getChannel());
+        try {
+            assertEquals(5, pack.getEntries().size());
+            assertTrue(pack.getEntry("pack/").isDirectory());
+            MaterialPack.Entry stored = pack.getEntry("pack/thumbnail_a.png");
+            assertTrue(stored.isStored());
+            assertEquals(content(1).length, stored.getSize());
+            assertEquals(crc(content(1)), stored.getCrc());
+            assertFalse(pack.getEntry("pack/a.png").isStored());
+            assertNull(pack.getEntry("pack/missing.png"));
+        } finally {
+            pack.close();
+        }
+    }
+
+    @Test
+    public void openStream_readsStoredAndDeflatedEntries() throws Exception {
+        File zip = new File(dir, "pack.zip");
+        writePack(new FileOutputStream(zip), null);
+
+        MaterialPack pack = MaterialPack.open(new RandomAccessFile(zip, "r").getChannel());
+        try {
+            assertArrayEquals(content(1), readFully(pack, "pack/thumbnail_a.png"));
+            assertArrayEquals(content(2), readFully(pack, "pack/a.png"));
+            assertArrayEquals(content(3), readFully(pack, "pack/thumbnail_b.png"));
+            assertArrayEquals(content(4), readFully(pack, "pack/b.png"));
+            // 再次读取同一条目
+            assertArrayEquals(content(2), readFully(pack, "pack/a.png"));
+        } finally {
+            pack.close();
+        }
+    }
+
+    @Test
+    public void open_readsPackEmbeddedAtOffset() throws Exception {
+        // 模拟 APK 中不压缩存放的 assets, 素材包前后都有其它数据
+        File apk = new File(dir, "app.apk");
+        FileOutputStream out = new FileOutputStream(apk);
+        byte[] prefix = content(7);
+        out.write(prefix);
+        ByteArrayOutputStream packBytes = new ByteArrayOutputStream();
+        writePack(packBytes, null);
+        out.write(packBytes.toByteArray());
+        out.write(content(8));
+        out.close();
+
+        MaterialPack pack = MaterialPack.open(new RandomAccessFile(apk, "r").getChannel(),
+                prefix.length, packBytes.size());
+        try {
+            assertEquals(5, pack.getEntries().size());
+            assertArrayEquals(content(1), readFully(pack, "pack/thumbnail_a.png"));
+            assertArrayEquals(content(4), readFully(pack, "pack/b.png"));
+        } finally {
+            pack.close();
+        }
+    }
+
+    @Test
+    public void extract_writesOnlyRequestedEntry() throws Exception {
+        File zip = new File(dir, "pack.zip");
+        writePack(new FileOutputStream(zip), null);
+        File outputDir = new File(dir, "out");
+
+        MaterialPack pack = MaterialPack.open(new RandomAccessFile(zip, "r").getChannel());
+        try {
+            File stored = new File(outputDir, "pack/thumbnail_b.png");
+            pack.extract(pack.getEntry("pack/thumbnail_b.png"), stored);
+            File deflated = new File(outputDir, "pack/a.png");
+            pack.extract(pack.getEntry("pack/a.png"), deflated);
+
+            assertArrayEquals(content(3), readFully(stored));
+            assertArrayEquals(content(2), readFully(deflated));
+            assertFalse(new File(outputDir, "pack/b.png").exists());
+            assertFalse(new File(deflated.getPath() + ".tmp").exists());
+        } finally {
+            pack.close();
+        }
+    }
+
+    @Test
+    public void extract_replacesSameSizeStaleFile() throws Exception {
+        File zip = new File(dir, "pack.zip");
+        writePack(new FileOutputStream(zip), null);
+        File target = new File(dir, "out/pack/a.png");
+        target.getParentFile().mkdirs();
+        // 旧素材包留下的同名同大小文件
+        byte[] stale = content(2).clone();
+        stale[0]++;
+        FileOutputStream out = new FileOutputStream(target);
+        out.write(stale);
+        out.close();
+
+        MaterialPack pack = MaterialPack.open(new RandomAccessFile(zip, "r").getChannel());
+        try {
+            pack.extract(pack.getEntry("pack/a.png"), target);
+            assertArrayEquals(content(2), readFully(target));
+            long modified = target.lastModified();
+            target.setLastModified(modified - 10000);
+            // 内容相同时跳过
+            pack.extract(pack.getEntry("pack/a.png"), target);
+            assertEquals(modified - 10000, target.lastModified());
+        } finally {
+            pack.close();
+        }
+    }
+
+    @Test
+    public void getChecksum_dependsOnContentNotLayout() throws Exception {
+        File zip = new File(dir, "pack.zip");
+        writePack(new FileOutputStream(zip), "comment");
+        // 同样的文件, 顺序和压缩方式不同
+        File reordered = new File(dir, "reordered.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(reordered));
+        putDeflated(out, "pack/b.png", content(4));
+        putStored(out, "pack/a.png", content(2));
+        putDeflated(out, "pack/thumbnail_b.png", content(3));
+        putStored(out, "pack/thumbnail_a.png", content(1));
+        out.close();
+        File changed = new File(dir, "changed.zip");
+        out = new ZipOutputStream(new FileOutputStream(changed));
+        putStored(out, "pack/thumbnail_a.png", content(1));
+        putDeflated(out, "pack/a.png", content(2));
+        putStored(out, "pack/thumbnail_b.png", content(3));
+        putDeflated(out, "pack/b.png", content(5));
+        out.close();
+
+        assertEquals(checksum(zip), checksum(reordered));
+        assertNotEquals(checksum(zip), checksum(changed));
+    }
+
+    @Test(expected = IOException.class)
+    public void open_rejectsNonZip() throws Exception {
+        File file = new File(dir, "not.zip");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content(5));
+        out.close();
+
+        MaterialPack.open(new RandomAccessFile(file, "r").getChannel());
+    }
+
+    private static long checksum(File zip) throws IOException {
+        MaterialPack pack = MaterialPack.open(new RandomAccessFile(zip, "r").getChannel());
+        try {
+            return pack.getChecksum();
+        } finally {
+            pack.close();
+        }
+    }
+
+    /**
+     * 缩略图不压缩存放, 原图压缩存放
+     */
+    private static void writePack(OutputStream stream, String comment) throws IOException {
+        ZipOutputStream out = new ZipOutputStream(stream);
+        if (comment != null) {
+            out.setComment(comment);
+        }
+        out.putNextEntry(new ZipEntry("pack/"));
+        out.closeEntry();
+        putStored(out, "pack/thumbnail_a.png", content(1));
+        putDeflated(out, "pack/a.png", content(2));
+        putStored(out, "pack/thumbnail_b.png", content(3));
+        putDeflated(out, "pack/b.png", content(4));
+        out.close();
+    }
+
+    private static void putStored(ZipOutputStream out, String name, byte[] data)
+            throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCrc(crc(data));
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static void putDeflated(ZipOutputStream out, String name, byte[] data)
+            throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static byte[] content(int seed) {
+        byte[] data = new byte[1000 + seed * 7919];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 97 + seed);
+        }
+        return data;
+    }
+
+    private static byte[] readFully(MaterialPack pack, String name) throws IOException {
+        InputStream in = pack.openStream(pack.getEntry(name));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
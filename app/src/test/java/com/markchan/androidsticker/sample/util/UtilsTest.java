@@ -0,0 +1,67 @@
+package com.markchan.androidsticker.sample.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Test;
+
+/**
+ * 素材包安装和旧版本 materials.xml 素材名处理单元测试.
+ */
+public class UtilsTest {
+
+    @Test
+    public void stripPackagePrefix() throws Exception {
+        assertEquals("a.png", Utils.stripPackagePrefix("/a.png"));
+        assertNull(Utils.stripPackagePrefix(null));
+        assertNull(Utils.stripPackagePrefix("/"));
+        assertNull(Utils.stripPackagePrefix("a.png"));
+    }
+
+    @Test
+    public void getPackageName() throws Exception {
+        assertEquals("cute_pack", Utils.getPackageName(new File("/sdcard/cute_pack.zip")));
+        assertNull(Utils.getPackageName(new File(".zip")));
+        assertNull(Utils.getPackageName(new File("cute_pack.rar")));
+    }
+
+    @Test
+    public void writePackIndex_pairsThumbnailsUnderPackage() throws Exception {
+        File dir = File.createTempFile("install", "");
+        dir.delete();
+        dir.mkdirs();
+        File zip = new File(dir, "cute_pack.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        for (String name : new String[]{"cute_pack/", "cute_pack/a.png",
+                "cute_pack/thumbnail_a.png", "cute_pack/b.png", "cute_pack/sub/c.png",
+                "cute_pack/sub/thumbnail_c.png", "other/d.png", "other/thumbnail_d.png"}) {
+            out.putNextEntry(new ZipEntry(name));
+            if (!name.endsWith("/")) {
+                out.write(name.getBytes("UTF-8"));
+            }
+            out.closeEntry();
+        }
+        out.close();
+
+        File indexFile = new File(dir, MaterialIndex.FILE_NAME);
+        MaterialPack pack = MaterialPack.open(new RandomAccessFile(zip, "r").getChannel());
+        try {
+            assertEquals(1, Utils.writePackIndex(pack, "cute_pack", indexFile));
+        } finally {
+            pack.close();
+        }
+        MaterialIndex index = MaterialIndex.read(indexFile);
+        assertEquals(1, index.size());
+        assertEquals("a.png", index.getName(0));
+        assertEquals("thumbnail_a.png", index.getThumbnailName(0));
+
+        indexFile.delete();
+        zip.delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,152 @@
+package com.markchan.androidsticker.sample.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 素材包并行解压单元测试.
+ */
+public class ZipExtractorTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("extractor", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(dir);
+    }
+
+    @Test
+    public void extract_writesAllEntriesAndReportsProgress() throws Exception {
+        File zip = new File(dir, "pack.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        out.putNextEntry(new ZipEntry("pack/"));
+        out.closeEntry();
+        long totalBytes = 0;
+        for (int i = 0; i < 20; i++) {
+            out.putNextEntry(new ZipEntry("pack/sticker_" + i + ".png"));
+            out.write(content(i));
+            out.closeEntry();
+            totalBytes += content(i).length;
+        }
+        out.close();
+
+        final AtomicInteger lastEntries = new AtomicInteger();
+        final AtomicLong lastBytes = new AtomicLong();
+        File outputDir = new File(dir, "out");
+        ZipExtractor extractor = new ZipExtractor(4);
+        extractor.extract(zip, outputDir, new ZipExtractor.ProgressListener() {
+            @Override
+            public void onProgress(long extractedBytes, long totalBytes, int extractedEntries,
+                    int totalEntries) {
+                assertEquals(20, totalEntries);
+                synchronized (lastEntries) {
+                    lastEntries.set(Math.max(lastEntries.get(), extractedEntries));
+                    lastBytes.set(Math.max(lastBytes.get(), extractedBytes));
+                }
+            }
+        });
+        extractor.shutdown();
+
+        assertEquals(20, lastEntries.get());
+        assertEquals(totalBytes, lastBytes.get());
+        for (int i = 0; i < 20; i++) {
+            File file = new File(outputDir, "pack/sticker_" + i + ".png");
+            assertArrayEquals(content(i), readFully(file));
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+        }
+    }
+
+    @Test
+    public void extract_rejectsEntriesOutsideOutputDirectory() throws Exception {
+        File zip = new File(dir, "evil.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        out.putNextEntry(new ZipEntry("../evil.txt"));
+        out.write(1);
+        out.closeEntry();
+        out.close();
+
+        ZipExtractor extractor = new ZipExtractor(2);
+        try {
+            extractor.extract(zip, new File(dir, "out"), null);
+            fail();
+        } catch (IOException expected) {
+        } finally {
+            extractor.shutdown();
+        }
+        assertFalse(new File(dir, "evil.txt").exists());
+    }
+
+    @Test
+    public void extract_propagatesFailure() throws Exception {
+        File zip = new File(dir, "pack.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        out.putNextEntry(new ZipEntry("a.png"));
+        out.write(content(1));
+        out.closeEntry();
+        out.close();
+        File outputDir = new File(dir, "out");
+        // 目标位置已有同名目录, 重命名失败
+        assertTrue(new File(outputDir, "a.png/child").mkdirs());
+
+        ZipExtractor extractor = new ZipExtractor(2);
+        try {
+            extractor.extract(zip, outputDir, null);
+            fail();
+        } catch (IOException expected) {
+        } finally {
+            extractor.shutdown();
+        }
+        assertFalse(new File(outputDir, "a.png.tmp").exists());
+    }
+
+    private static byte[] content(int seed) {
+        byte[] data = new byte[1000 + seed * 7919];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,162 @@
+package com.markchan.androidsticker.sample.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 素材列表加载压测: 读取二进制索引、读取第一页、构建素材列表, 以及读取未解压素材包的目录.
+ * 优化前每次打开素材界面都解析 materials.xml, 作为读取索引的对照.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogBenchmark {
+
+    /** 与 MaterialPager.PAGE_SIZE 一致 */
+    private static final int PAGE_SIZE = 60;
+
+    private static final byte[] THUMBNAIL = new byte[64];
+
+    @Param({"64", "1024", "8192"})
+    public int itemCount;
+
+    private File dir;
+    private File indexFile;
+    private File xmlFile;
+    private MaterialIndex index;
+    private FileChannel packChannel;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = File.createTempFile("catalog", "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+
+        indexFile = new File(dir, MaterialIndex.FILE_NAME);
+        MaterialIndex.Builder builder = new MaterialIndex.Builder();
+        for (int i = 0; i < itemCount; i++) {
+            builder.add("sticker_" + i + ".png", "thumbnail_sticker_" + i + ".png");
+        }
+        builder.write(indexFile);
+        index = MaterialIndex.read(indexFile);
+
+        // 与优化前 Utils#writeXML 生成的格式一致
+        xmlFile = new File(dir, "materials.xml");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(xmlFile), "UTF-8");
+        try {
+            writer.write("<?xml version='1.0' encoding='UTF-8' ?><materials>");
+            for (int i = 0; i < itemCount; i++) {
+                writer.write("<material><name>sticker_" + i + ".png</name><thumbnailname>"
+                        + "thumbnail_sticker_" + i + ".png</thumbnailname></material>");
+            }
+            writer.write("</materials>");
+        } finally {
+            writer.close();
+        }
+
+        // 素材包按 STORED 方式打包缩略图和原图, 与 assets 中的素材包一致
+        File packFile = new File(dir, "pack.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(packFile));
+        try {
+            for (int i = 0; i < itemCount; i++) {
+                putStored(out, "pack/thumbnail_sticker_" + i + ".png");
+                putStored(out, "pack/sticker_" + i + ".png");
+            }
+        } finally {
+            out.close();
+        }
+        packChannel = new RandomAccessFile(packFile, "r").getChannel();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        packChannel.close();
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public MaterialIndex readIndex() throws IOException {
+        return MaterialIndex.read(indexFile);
+    }
+
+    /**
+     * 优化前的做法: 解析 materials.xml 得到全部素材
+     */
+    @Benchmark
+    public ArrayList<HashMap<String, String>> parseXml() throws IOException {
+        return LegacyUtils.parseXML(new FileInputStream(xmlFile), "pack");
+    }
+
+    /**
+     * 打开素材界面时只需要第一页
+     */
+    @Benchmark
+    public MaterialIndex readFirstPage() throws IOException {
+        return MaterialIndex.readRange(indexFile, 0, Math.min(PAGE_SIZE, itemCount));
+    }
+
+    @Benchmark
+    public MaterialCatalog buildCatalog() {
+        return new MaterialCatalog.Builder(dir)
+                .addIndex("pack", index)
+                .build();
+    }
+
+    /**
+     * 读取未解压素材包的中央目录并配对缩略图
+     */
+    @Benchmark
+    public MaterialCatalog openPack() throws IOException {
+        // 不关闭素材包, 关闭会同时关闭共用的文件通道
+        MaterialPack pack = MaterialPack.open(packChannel);
+        return new MaterialCatalog.Builder(dir)
+                .addPack(pack)
+                .build();
+    }
+
+    private static void putStored(ZipOutputStream out, String name) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(THUMBNAIL);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(THUMBNAIL.length);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(THUMBNAIL);
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,147 @@
+package com.markchan.androidsticker.sample.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 素材包解压压测, 每次调用解压整个素材包到空目录.
+ * 优化前的 Utils#unZip 和 Utils#upZipFile 作为多线程解压和按需解压的对照.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtractBenchmark {
+
+    @Param({"262144", "4194304"})
+    public int packBytes;
+
+    @Param({"16", "256"})
+    public int itemCount;
+
+    private File dir;
+    private File zip;
+    private File outputDirectory;
+    private ZipExtractor extractor;
+    private MaterialPack pack;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = File.createTempFile("extract", "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        outputDirectory = new File(dir, "out");
+
+        // 图片本身已压缩, 内容用随机数据模拟, 另有一半可压缩的数据模拟 png 头和透明区域
+        Random random = new Random(42);
+        byte[] data = new byte[Math.max(1, packBytes / itemCount)];
+        zip = new File(dir, "pack.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            out.putNextEntry(new ZipEntry("pack/"));
+            out.closeEntry();
+            for (int i = 0; i < itemCount; i++) {
+                random.nextBytes(data);
+                for (int j = 0; j < data.length / 2; j++) {
+                    data[j] = 0;
+                }
+                out.putNextEntry(new ZipEntry("pack/sticker_" + i + ".png"));
+                out.write(data);
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+
+        extractor = new ZipExtractor();
+        pack = MaterialPack.open(new RandomAccessFile(zip, "r").getChannel());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        extractor.shutdown();
+        pack.close();
+        delete(dir);
+    }
+
+    /**
+     * 每次解压前清空目录, 否则 MaterialPack 会跳过已存在的文件
+     */
+    @TearDown(Level.Invocation)
+    public void clearOutput() {
+        delete(outputDirectory);
+    }
+
+    /**
+     * 多线程解压, 安装下载的素材包时使用
+     */
+    @Benchmark
+    public File zipExtractor() throws IOException {
+        extractor.extract(zip, outputDirectory, null);
+        return outputDirectory;
+    }
+
+    /**
+     * 按需解压未解压素材包中的全部文件
+     */
+    @Benchmark
+    public File materialPack() throws IOException {
+        for (MaterialPack.Entry entry : pack.getEntries()) {
+            if (!entry.isDirectory()) {
+                pack.extract(entry, new File(outputDirectory, entry.getName()));
+            }
+        }
+        return outputDirectory;
+    }
+
+    /**
+     * 优化前安装素材包的做法, 用 ZipInputStream 顺序解压
+     */
+    @Benchmark
+    public File legacyUnZip() throws IOException {
+        LegacyUtils.unZip(new FileInputStream(zip), outputDirectory.getPath());
+        return outputDirectory;
+    }
+
+    /**
+     * 优化前的另一种解压方式, 用 ZipFile 逐个解压
+     */
+    @Benchmark
+    public File legacyUpZipFile() throws IOException {
+        LegacyUtils.upZipFile(zip, outputDirectory.getPath() + File.separator);
+        return outputDirectory;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,173 @@
+package com.markchan.androidsticker.sample.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * 优化前 Utils 中的 unZip、upZipFile 和 parseXML, 作为压测对照.
+ *
+ * 逻辑保持原样, 只做了在 JVM 上运行所需的改动: Xml.newPullParser() 换成 Android 内部使用的
+ * KXmlParser, unZip 从输入流而不是 Assets 读取, 去掉了 Log 输出.
+ */
+final class LegacyUtils {
+
+    private LegacyUtils() {
+    }
+
+    /**
+     * 解压整个素材包, 对应原 Utils#unZip
+     */
+    static void unZip(InputStream inputStream, String outputDirectory) throws IOException {
+        File file = new File(outputDirectory);
+        if (!file.exists()) {
+            file.mkdirs();
+        }
+        ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+        ZipEntry zipEntry = zipInputStream.getNextEntry();
+        byte[] buffer = new byte[1024 * 1024];
+        int count = 0;
+        while (zipEntry != null) {
+            if (zipEntry.isDirectory()) {
+                file = new File(outputDirectory + File.separator + zipEntry.getName());
+                file.mkdir();
+            } else {
+                file = new File(outputDirectory + File.separator
+                        + zipEntry.getName());
+                file.createNewFile();
+                FileOutputStream fileOutputStream = new FileOutputStream(file);
+                while ((count = zipInputStream.read(buffer)) > 0) {
+                    fileOutputStream.write(buffer, 0, count);
+                }
+                fileOutputStream.close();
+            }
+            zipEntry = zipInputStream.getNextEntry();
+        }
+        zipInputStream.close();
+    }
+
+    /**
+     * 解压整个素材包, 对应原 Utils#upZipFile
+     */
+    @SuppressWarnings("rawtypes")
+    static int upZipFile(File zipFile, String folderPath) throws IOException {
+        ZipFile zfile = new ZipFile(zipFile);
+        Enumeration zList = zfile.entries();
+        ZipEntry ze = null;
+        byte[] buf = new byte[1024];
+        while (zList.hasMoreElements()) {
+            ze = (ZipEntry) zList.nextElement();
+            if (ze.isDirectory()) {
+                String dirstr = folderPath + ze.getName();
+                dirstr = new String(dirstr.getBytes("8859_1"), "GB2312");
+                File f = new File(dirstr);
+                f.mkdir();
+                continue;
+            }
+            OutputStream os = new BufferedOutputStream(
+                    new FileOutputStream(getRealFileName(folderPath, ze.getName())));
+            InputStream is = new BufferedInputStream(zfile.getInputStream(ze));
+            int readLen = 0;
+            while ((readLen = is.read(buf, 0, 1024)) != -1) {
+                os.write(buf, 0, readLen);
+            }
+            is.close();
+            os.close();
+        }
+        zfile.close();
+        return 0;
+    }
+
+    private static File getRealFileName(String baseDir, String absFileName) {
+        String[] dirs = absFileName.split("/");
+        File ret = new File(baseDir);
+        String substr = null;
+        if (dirs.length > 1) {
+            for (int i = 0; i < dirs.length - 1; i++) {
+                substr = dirs[i];
+                try {
+                    substr = new String(substr.getBytes("8859_1"), "GB2312");
+                } catch (UnsupportedEncodingException e) {
+                    e.printStackTrace();
+                }
+                ret = new File(ret, substr);
+            }
+            if (!ret.exists()) {
+                ret.mkdirs();
+            }
+            substr = dirs[dirs.length - 1];
+            try {
+                substr = new String(substr.getBytes("8859_1"), "GB2312");
+            } catch (UnsupportedEncodingException e) {
+                e.printStackTrace();
+            }
+            ret = new File(ret, substr);
+            return ret;
+        }
+        return ret;
+    }
+
+    /**
+     * 解析 materials.xml, 对应原 Utils#parseXML
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static ArrayList<HashMap<String, String>> parseXML(InputStream inStream,
+            String packageName) {
+        XmlPullParser parser = new KXmlParser();
+        try {
+            parser.setInput(inStream, "UTF-8");
+            int eventType = parser.getEventType();
+
+            HashMap map = null;
+            ArrayList<HashMap<String, String>> list = null;
+
+            while (eventType != XmlPullParser.END_DOCUMENT) {
+                switch (eventType) {
+                    case XmlPullParser.START_DOCUMENT:
+                        list = new ArrayList<HashMap<String, String>>();
+                        break;
+
+                    case XmlPullParser.START_TAG:
+                        String name = parser.getName();
+                        if (name.equalsIgnoreCase("material")) {
+                            map = new HashMap<String, String>();
+                        } else if (map != null) {
+                            if (name.equalsIgnoreCase("name")) {
+                                map.put("name", packageName + "/" + parser.nextText());
+                            } else if (name.equalsIgnoreCase("thumbnailname")) {
+                                map.put("thumbnailname", packageName + "/" + parser.nextText());
+                            }
+                        }
+                        break;
+
+                    case XmlPullParser.END_TAG:
+                        if (parser.getName().equalsIgnoreCase("material") && map != null) {
+                            list.add(map);
+                            map = null;
+                        }
+                        break;
+                }
+                eventType = parser.next();
+            }
+
+            inStream.close();
+            return list;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
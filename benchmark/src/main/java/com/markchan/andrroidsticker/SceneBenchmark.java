@@ -0,0 +1,191 @@
+package com.markchan.andrroidsticker;
+
+import com.markchan.andrroidsticker.geometry.Affine;
+import com.markchan.andrroidsticker.geometry.Geometry;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 贴纸场景压测: 触摸命中检测, 以及每帧重建变换、更新网格索引并按重绘区域裁剪.
+ *
+ * 与 StickerView、StickerAttacher 的计算方式一致, 但不经过 Canvas 和 Bitmap, 位图绘制只能在设备上测量.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SceneBenchmark {
+
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 1920;
+    private static final int STICKER_WIDTH = 300;
+    private static final int STICKER_HEIGHT = 200;
+    private static final int CTR_SIZE = 48;
+    /** 与 StickerView 一致 */
+    private static final int GRID_CELL_SIZE = 96;
+
+    /** 预先生成的触摸点数量, 必须是 2 的幂 */
+    private static final int QUERY_COUNT = 1024;
+
+    private static final float[] SRC_POINTS = new float[]{
+            0, 0,
+            STICKER_WIDTH, 0,
+            STICKER_WIDTH, STICKER_HEIGHT,
+            0, STICKER_HEIGHT,
+            STICKER_WIDTH / 2F, STICKER_HEIGHT / 2F
+    };
+
+    private static final StickerGrid.HitTest<Item> HIT_TEST = new StickerGrid.HitTest<Item>() {
+        @Override
+        public boolean isHit(Item item, int x, int y) {
+            return item.mHitTester.isOnSticker(x, y, STICKER_WIDTH, STICKER_HEIGHT);
+        }
+    };
+
+    private static final class Item {
+
+        final float[] mTransform = new float[Affine.SIZE];
+        final float[] mDestPoints = new float[SRC_POINTS.length];
+        final StickerHitTester mHitTester = new StickerHitTester();
+
+        float mCenterX;
+        float mCenterY;
+        float mScale;
+        float mRotation;
+
+        float mLeft;
+        float mTop;
+        float mRight;
+        float mBottom;
+
+        void updateTransform() {
+            Affine.set(mTransform, SRC_POINTS[8], SRC_POINTS[9], mScale, mRotation, mCenterX,
+                    mCenterY);
+            Affine.mapPoints(mTransform, mDestPoints, SRC_POINTS);
+            mHitTester.setMatrixValues(mTransform);
+            mLeft = mRight = mDestPoints[0];
+            mTop = mBottom = mDestPoints[1];
+            for (int i = 2; i < 8; i += 2) {
+                mLeft = Math.min(mLeft, mDestPoints[i]);
+                mRight = Math.max(mRight, mDestPoints[i]);
+                mTop = Math.min(mTop, mDestPoints[i + 1]);
+                mBottom = Math.max(mBottom, mDestPoints[i + 1]);
+            }
+        }
+    }
+
+    @Param({"10", "100", "1000"})
+    public int stickerCount;
+
+    private Item[] mItems;
+    private StickerGrid<Item> mGrid;
+
+    private final int[] mQueryX = new int[QUERY_COUNT];
+    private final int[] mQueryY = new int[QUERY_COUNT];
+    private int mQuery;
+
+    /** 每帧的重绘区域, 约为视图的四分之一 */
+    private final float[] mDirty = new float[]{270, 480, 810, 1440};
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mItems = new Item[stickerCount];
+        mGrid = new StickerGrid<>(GRID_CELL_SIZE);
+        mGrid.resize(VIEW_WIDTH, VIEW_HEIGHT);
+        for (int i = 0; i < stickerCount; i++) {
+            Item item = new Item();
+            item.mCenterX = random.nextFloat() * VIEW_WIDTH;
+            item.mCenterY = random.nextFloat() * VIEW_HEIGHT;
+            item.mScale = 0.5F + random.nextFloat() * 1.5F;
+            item.mRotation = random.nextFloat() * 360 - 180;
+            item.updateTransform();
+            mGrid.add(item, item.mLeft, item.mTop, item.mRight, item.mBottom);
+            mItems[i] = item;
+        }
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            mQueryX[i] = random.nextInt(VIEW_WIDTH);
+            mQueryY[i] = random.nextInt(VIEW_HEIGHT);
+        }
+    }
+
+    private int nextQuery() {
+        mQuery = (mQuery + 1) & (QUERY_COUNT - 1);
+        return mQuery;
+    }
+
+    /**
+     * StickerView 按下时查找最上层贴纸
+     */
+    @Benchmark
+    public Object findTopSticker() {
+        int q = nextQuery();
+        return mGrid.findTop(mQueryX[q], mQueryY[q], HIT_TEST);
+    }
+
+    /**
+     * 不使用网格, 从上往下逐个检测, 作为网格索引的对照
+     */
+    @Benchmark
+    public Object findTopStickerLinear() {
+        int q = nextQuery();
+        int x = mQueryX[q];
+        int y = mQueryY[q];
+        for (int i = mItems.length - 1; i >= 0; i--) {
+            if (HIT_TEST.isHit(mItems[i], x, y)) {
+                return mItems[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 单个贴纸的命中检测, 对应 StickerAttacher#isHit
+     */
+    @Benchmark
+    public boolean isHit() {
+        int q = nextQuery();
+        Item item = mItems[q % mItems.length];
+        int x = mQueryX[q];
+        int y = mQueryY[q];
+        return item.mHitTester.isOnSticker(x, y, STICKER_WIDTH, STICKER_HEIGHT)
+                || StickerHitTester.getCurrCtr(item.mDestPoints, x, y, CTR_SIZE, CTR_SIZE)
+                != StickerHitTester.CTR_NONE;
+    }
+
+    /**
+     * 所有贴纸同时变换的一帧: 重建变换和顶点、更新网格索引, 再按重绘区域裁剪出需要绘制的贴纸
+     */
+    @Benchmark
+    public int frame() {
+        int q = nextQuery();
+        float dx = (q & 1) == 0 ? 1 : -1;
+        for (Item item : mItems) {
+            item.mCenterX += dx;
+            item.mRotation = Geometry.normalizeDegrees(item.mRotation + dx);
+            item.updateTransform();
+            mGrid.update(item, item.mLeft, item.mTop, item.mRight, item.mBottom);
+        }
+        int visible = 0;
+        for (Item item : mItems) {
+            if (item.mRight >= mDirty[0] && item.mLeft <= mDirty[2]
+                    && item.mBottom >= mDirty[1] && item.mTop <= mDirty[3]) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+}
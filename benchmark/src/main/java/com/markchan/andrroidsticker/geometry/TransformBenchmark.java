@@ -0,0 +1,131 @@
+package com.markchan.andrroidsticker.geometry;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 手势变换压测, 每次调用对应一个触摸事件的计算.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+
+    private static final int STICKER_WIDTH = 300;
+    private static final int STICKER_HEIGHT = 200;
+
+    /** 预先生成的触摸点数量, 必须是 2 的幂 */
+    private static final int SAMPLE_COUNT = 1024;
+
+    private static final float[] SRC_POINTS = new float[]{
+            0, 0,
+            STICKER_WIDTH, 0,
+            STICKER_WIDTH, STICKER_HEIGHT,
+            0, STICKER_HEIGHT,
+            STICKER_WIDTH / 2F, STICKER_HEIGHT / 2F
+    };
+
+    /** 两根手指的坐标: x0, y0, x1, y1 */
+    private final float[] mSamples = new float[SAMPLE_COUNT * 4];
+    private int mSample;
+
+    private final float[] mTransform = new float[Affine.SIZE];
+    private final float[] mInverse = new float[Affine.SIZE];
+    private final float[] mDestPoints = new float[SRC_POINTS.length];
+
+    private float mCenterX = 500;
+    private float mCenterY = 500;
+    private float mScale = 1;
+    private float mRotation;
+
+    private float mSpan;
+    private float mAngle;
+    private float mFocusX;
+    private float mFocusY;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < mSamples.length; i++) {
+            mSamples[i] = 200 + random.nextFloat() * 600;
+        }
+        mSpan = Geometry.distance(mSamples[0], mSamples[1], mSamples[2], mSamples[3]);
+        mAngle = Geometry.degrees(mSamples[0], mSamples[1], mSamples[2], mSamples[3]);
+        mFocusX = (mSamples[0] + mSamples[2]) / 2;
+        mFocusY = (mSamples[1] + mSamples[3]) / 2;
+        Affine.set(mTransform, SRC_POINTS[8], SRC_POINTS[9], mScale, mRotation, mCenterX,
+                mCenterY);
+        Affine.mapPoints(mTransform, mDestPoints, SRC_POINTS);
+    }
+
+    /**
+     * 两指角度, 对应原 StickerAttacher#computeDegrees
+     */
+    @Benchmark
+    public float degrees() {
+        int i = nextSample();
+        return Geometry.degrees(mSamples[i], mSamples[i + 1], mSamples[i + 2], mSamples[i + 3]);
+    }
+
+    /**
+     * 双指移动一次: 与 StickerGestureDetector 相同方式算出平移、缩放和旋转增量,
+     * 再像 StickerAttacher 一样重建变换、映射顶点并为命中检测求逆
+     */
+    @Benchmark
+    public float gestureMove() {
+        int i = nextSample();
+        float x0 = mSamples[i];
+        float y0 = mSamples[i + 1];
+        float x1 = mSamples[i + 2];
+        float y1 = mSamples[i + 3];
+        float focusX = (x0 + x1) / 2;
+        float focusY = (y0 + y1) / 2;
+        float span = Geometry.distance(x0, y0, x1, y1);
+        float angle = Geometry.degrees(x0, y0, x1, y1);
+
+        mCenterX += focusX - mFocusX;
+        mCenterY += focusY - mFocusY;
+        if (mSpan > 0 && span > 0) {
+            mScale = Math.max(0.1F, Math.min(10, mScale * span / mSpan));
+        }
+        float degrees = Geometry.normalizeDegrees(angle - mAngle);
+        mRotation = Geometry.normalizeDegrees(mRotation + degrees);
+        mFocusX = focusX;
+        mFocusY = focusY;
+        mSpan = span;
+        mAngle = angle;
+
+        Affine.set(mTransform, SRC_POINTS[8], SRC_POINTS[9], mScale, mRotation, mCenterX,
+                mCenterY);
+        Affine.mapPoints(mTransform, mDestPoints, SRC_POINTS);
+        Affine.invert(mTransform, mInverse);
+        return mDestPoints[0] + mInverse[2];
+    }
+
+    /**
+     * 判断触摸点是否落在旋转后的贴纸顶点组成的多边形内, 变换变化后第一次命中检测的做法
+     */
+    @Benchmark
+    public boolean polygonContains() {
+        int i = nextSample();
+        return Geometry.polygonContains(mDestPoints, 4, mSamples[i], mSamples[i + 1]);
+    }
+
+    private int nextSample() {
+        mSample = (mSample + 1) & (SAMPLE_COUNT - 1);
+        return mSample * 4;
+    }
+}
@@ -0,0 +1,97 @@
+package com.markchan.andrroidsticker.geometry;
+
+/**
+ * 基本类型数组上的二维仿射变换.
+ *
+ * 变换保存在长度为 {@link #SIZE} 的 float 数组中, 布局与 android.graphics.Matrix#getValues
+ * 的前六个值一致: scaleX, skewX, transX, skewY, scaleY, transY. 所有方法只读写传入的数组,
+ * 不分配对象, 可以在触摸事件和绘制过程中反复调用.
+ */
+public final class Affine {
+
+    public static final int SIZE = 6;
+
+    private Affine() {
+    }
+
+    public static void setIdentity(float[] m) {
+        m[0] = 1;
+        m[1] = 0;
+        m[2] = 0;
+        m[3] = 0;
+        m[4] = 1;
+        m[5] = 0;
+    }
+
+    /**
+     * 先以 (pivotX, pivotY) 为原点等比缩放并顺时针旋转, 再把原点移到 (translateX, translateY)
+     *
+     * @param degrees 旋转角度, 与 android.graphics.Matrix#postRotate 方向一致
+     */
+    public static void set(float[] m, float pivotX, float pivotY, float scale, float degrees,
+            float translateX, float translateY) {
+        double radians = Math.toRadians(degrees);
+        float cos = (float) (Math.cos(radians) * scale);
+        float sin = (float) (Math.sin(radians) * scale);
+        m[0] = cos;
+        m[1] = -sin;
+        m[2] = translateX - (cos * pivotX - sin * pivotY);
+        m[3] = sin;
+        m[4] = cos;
+        m[5] = translateY - (sin * pivotX + cos * pivotY);
+    }
+
+    /**
+     * 计算逆变换, 不可逆时返回 false 且不修改 inverse. m 与 inverse 可以是同一个数组
+     */
+    public static boolean invert(float[] m, float[] inverse) {
+        float a = m[0];
+        float b = m[1];
+        float c = m[2];
+        float d = m[3];
+        float e = m[4];
+        float f = m[5];
+        float det = a * e - b * d;
+        if (det == 0) {
+            return false;
+        }
+        float invDet = 1.0F / det;
+        inverse[0] = e * invDet;
+        inverse[1] = -b * invDet;
+        inverse[2] = (b * f - c * e) * invDet;
+        inverse[3] = -d * invDet;
+        inverse[4] = a * invDet;
+        inverse[5] = (c * d - a * f) * invDet;
+        return true;
+    }
+
+    public static float mapX(float[] m, float x, float y) {
+        return m[0] * x + m[1] * y + m[2];
+    }
+
+    public static float mapY(float[] m, float x, float y) {
+        return m[3] * x + m[4] * y + m[5];
+    }
+
+    /**
+     * 变换 src 中按 x, y 交替存放的点, 结果写入 dst. src 与 dst 可以是同一个数组
+     */
+    public static void mapPoints(float[] m, float[] dst, float[] src) {
+        for (int i = 0; i + 1 < src.length; i += 2) {
+            float x = src[i];
+            float y = src[i + 1];
+            dst[i] = m[0] * x + m[1] * y + m[2];
+            dst[i + 1] = m[3] * x + m[4] * y + m[5];
+        }
+    }
+
+    /**
+     * 转为 3x3 矩阵值, 用于 android.graphics.Matrix#setValues
+     */
+    public static void getValues(float[] m, float[] values) {
+        System.arraycopy(m, 0, values, 0, SIZE);
+        values[6] = 0;
+        values[7] = 0;
+        values[8] = 1;
+    }
+}
@@ -0,0 +1,54 @@
+package com.markchan.andrroidsticker.geometry;
+
+/**
+ * 点、角度和多边形计算, 点按 x, y 交替存放在 float 数组中, 不分配对象.
+ */
+public final class Geometry {
+
+    private Geometry() {
+    }
+
+    public static float distance(float x1, float y1, float x2, float y2) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * 从 (x1, y1) 指向 (x2, y2) 的方向角, 范围 (-180, 180], x 轴正方向为 0, 顺时针(y 轴向下)为正,
+     * 与 android.graphics.Matrix#postRotate 方向一致
+     */
+    public static float degrees(float x1, float y1, float x2, float y2) {
+        return (float) Math.toDegrees(Math.atan2(y2 - y1, x2 - x1));
+    }
+
+    /**
+     * 把角度规范到 (-180, 180]
+     */
+    public static float normalizeDegrees(float degrees) {
+        degrees %= 360;
+        if (degrees > 180) {
+            degrees -= 360;
+        } else if (degrees <= -180) {
+            degrees += 360;
+        }
+        return degrees;
+    }
+
+    /**
+     * 判断点是否落在多边形内(射线法), 多边形的顶点按顺序存放在 points 的前 count 个点中
+     */
+    public static boolean polygonContains(float[] points, int count, float x, float y) {
+        boolean inside = false;
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            float xi = points[i * 2];
+            float yi = points[i * 2 + 1];
+            float xj = points[j * 2];
+            float yj = points[j * 2 + 1];
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,133 @@
+package com.markchan.andrroidsticker.geometry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+/**
+ * 仿射变换单元测试.
+ */
+public class AffineTest {
+
+    private static final float DELTA = 1e-3F;
+
+    @Test
+    public void set_mapsPivotToTranslation() throws Exception {
+        float[] m = new float[Affine.SIZE];
+        // 200x100 的贴纸以中心为原点放大两倍、顺时针旋转 90 度, 中心移到 (300, 400)
+        Affine.set(m, 100, 50, 2, 90, 300, 400);
+
+        float[] points = new float[]{
+                0, 0,
+                200, 0,
+                200, 100,
+                0, 100,
+                100, 50
+        };
+        Affine.mapPoints(m, points, points);
+
+        assertPoint(400, 200, points, 0);
+        assertPoint(400, 600, points, 1);
+        assertPoint(200, 600, points, 2);
+        assertPoint(200, 200, points, 3);
+        assertPoint(300, 400, points, 4);
+    }
+
+    @Test
+    public void set_identity() throws Exception {
+        float[] m = new float[Affine.SIZE];
+        Affine.set(m, 100, 50, 1, 0, 100, 50);
+        float[] identity = new float[Affine.SIZE];
+        Affine.setIdentity(identity);
+
+        for (int i = 0; i < Affine.SIZE; i++) {
+            assertEquals(identity[i], m[i], DELTA);
+        }
+    }
+
+    @Test
+    public void invert_roundTrips() throws Exception {
+        float[] m = new float[Affine.SIZE];
+        Affine.set(m, 10, 20, 1.5F, -37, 120, 80);
+        float[] inverse = new float[Affine.SIZE];
+        assertTrue(Affine.invert(m, inverse));
+
+        float x = Affine.mapX(m, 33, 44);
+        float y = Affine.mapY(m, 33, 44);
+        assertEquals(33, Affine.mapX(inverse, x, y), DELTA);
+        assertEquals(44, Affine.mapY(inverse, x, y), DELTA);
+    }
+
+    @Test
+    public void invert_singular() throws Exception {
+        float[] m = new float[]{0, 0, 5, 0, 0, 5};
+        float[] inverse = new float[]{1, 2, 3, 4, 5, 6};
+
+        assertFalse(Affine.invert(m, inverse));
+        assertEquals(1, inverse[0], 0);
+    }
+
+    @Test
+    public void getValues_appendsProjectionRow() throws Exception {
+        float[] m = new float[]{1, 2, 3, 4, 5, 6};
+        float[] values = new float[9];
+        Affine.getValues(m, values);
+
+        assertEquals(6, values[5], 0);
+        assertEquals(0, values[6], 0);
+        assertEquals(0, values[7], 0);
+        assertEquals(1, values[8], 0);
+    }
+
+    @Test
+    public void transform_doesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        float[] m = new float[Affine.SIZE];
+        float[] inverse = new float[Affine.SIZE];
+        float[] src = new float[]{0, 0, 200, 0, 200, 100, 0, 100, 100, 50};
+        float[] dst = new float[src.length];
+
+        // 预热, 让 JIT 完成编译且计数接口自身完成初始化
+        for (int i = 0; i < 5; i++) {
+            simulateGesture(m, inverse, src, dst);
+        }
+        threadMXBean.getThreadAllocatedBytes(threadId);
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        int hits = simulateGesture(m, inverse, src, dst);
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        assertTrue(hits > 0);
+        assertEquals(0, after - before);
+    }
+
+    /**
+     * 模拟手势中每个事件的计算: 重建变换、映射顶点、求逆并像 StickerHitTester 一样检测命中
+     */
+    private static int simulateGesture(float[] m, float[] inverse, float[] src, float[] dst) {
+        int hits = 0;
+        for (int i = 0; i < 100000; i++) {
+            Affine.set(m, 100, 50, 1 + i % 10 / 10F, i % 360, 300, 200);
+            Affine.mapPoints(m, dst, src);
+            if (Affine.invert(m, inverse)) {
+                float x = Affine.mapX(inverse, 300 + i % 50, 200);
+                float y = Affine.mapY(inverse, 300 + i % 50, 200);
+                if (x > 0 && x < 200 && y > 0 && y < 100) {
+                    hits++;
+                }
+            }
+        }
+        return hits;
+    }
+
+    private static void assertPoint(float x, float y, float[] points, int index) {
+        assertEquals(x, points[index * 2], DELTA);
+        assertEquals(y, points[index * 2 + 1], DELTA);
+    }
+}
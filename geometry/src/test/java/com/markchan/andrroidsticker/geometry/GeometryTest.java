@@ -0,0 +1,69 @@
+package com.markchan.andrroidsticker.geometry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * 几何计算单元测试.
+ */
+public class GeometryTest {
+
+    private static final float DELTA = 1e-3F;
+
+    @Test
+    public void degrees_clockwiseWithYDown() throws Exception {
+        assertEquals(0, Geometry.degrees(0, 0, 10, 0), DELTA);
+        assertEquals(90, Geometry.degrees(0, 0, 0, 10), DELTA);
+        assertEquals(180, Geometry.degrees(0, 0, -10, 0), DELTA);
+        assertEquals(-90, Geometry.degrees(0, 0, 0, -10), DELTA);
+        assertEquals(45, Geometry.degrees(10, 10, 20, 20), DELTA);
+    }
+
+    @Test
+    public void normalizeDegrees() throws Exception {
+        assertEquals(10, Geometry.normalizeDegrees(370), DELTA);
+        assertEquals(-170, Geometry.normalizeDegrees(190), DELTA);
+        assertEquals(180, Geometry.normalizeDegrees(-180), DELTA);
+        assertEquals(180, Geometry.normalizeDegrees(540), DELTA);
+        assertEquals(-90, Geometry.normalizeDegrees(-450), DELTA);
+    }
+
+    @Test
+    public void distance() throws Exception {
+        assertEquals(5, Geometry.distance(1, 1, 4, 5), DELTA);
+    }
+
+    @Test
+    public void polygonContains_rotatedRectangle() throws Exception {
+        // 以 (100, 100) 为中心旋转 45 度的正方形
+        float[] points = new float[]{
+                100, 50,
+                150, 100,
+                100, 150,
+                50, 100
+        };
+
+        assertTrue(Geometry.polygonContains(points, 4, 100, 100));
+        assertTrue(Geometry.polygonContains(points, 4, 130, 100));
+        assertFalse(Geometry.polygonContains(points, 4, 60, 60));
+        assertFalse(Geometry.polygonContains(points, 4, 160, 100));
+    }
+
+    @Test
+    public void polygonContains_usesOnlyCountPoints() throws Exception {
+        // 第五个点是中心点, 不属于多边形
+        float[] points = new float[]{
+                0, 0,
+                10, 0,
+                10, 10,
+                0, 10,
+                100, 100
+        };
+
+        assertTrue(Geometry.polygonContains(points, 4, 5, 5));
+        assertFalse(Geometry.polygonContains(points, 4, 50, 50));
+    }
+}
@@ -0,0 +1,104 @@
+package com.markchan.andrroidsticker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.support.test.runner.AndroidJUnit4;
+import java.util.ArrayList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * 图片缓存钉住、释放以及淘汰后归还图片池.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BitmapCacheTest {
+
+    /** 10x10 ARGB_8888 图片占用的字节数 */
+    private static final int BITMAP_BYTES = 10 * 10 * 4;
+
+    private BitmapCache mCache;
+    private BitmapPool mPool;
+    private final ArrayList<String> mEvictedKeys = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        // 最多容纳两张图片
+        mCache = new BitmapCache(BITMAP_BYTES * 2);
+        mPool = new BitmapPool(BITMAP_BYTES * 4);
+        mCache.addOnEvictedListener(new BitmapCache.OnEvictedListener() {
+            @Override
+            public void onEvicted(String key, Bitmap bitmap) {
+                mEvictedKeys.add(key);
+                mPool.put(bitmap);
+            }
+        });
+    }
+
+    @Test
+    public void pinned_notEvictedUntilReleased() throws Exception {
+        mCache.putAndAcquire("a", createBitmap());
+        mCache.put("b", createBitmap());
+        mCache.put("c", createBitmap());
+
+        // "a" 已被 LRU 淘汰, 但仍钉住, 不能回调
+        assertFalse(mEvictedKeys.contains("a"));
+
+        mCache.release("a");
+        assertTrue(mEvictedKeys.contains("a"));
+        assertNull(mCache.get("a"));
+    }
+
+    @Test
+    public void releaseAndEvict_returnsToPool() throws Exception {
+        Bitmap bitmap = mCache.putAndAcquire("a", createBitmap());
+
+        mCache.releaseAndEvict("a");
+
+        assertEquals(1, mEvictedKeys.size());
+        assertNull(mCache.get("a"));
+        if (BitmapPool.isSupported()) {
+            assertSame(bitmap, mPool.get(10, 10, Bitmap.Config.ARGB_8888));
+        }
+    }
+
+    @Test
+    public void releaseAndEvict_keepsBitmapSharedByOtherSticker() throws Exception {
+        mCache.putAndAcquire("a", createBitmap());
+        mCache.acquire("a");
+
+        mCache.releaseAndEvict("a");
+        assertTrue(mEvictedKeys.isEmpty());
+
+        mCache.releaseAndEvict("a");
+        assertEquals(1, mEvictedKeys.size());
+    }
+
+    @Test
+    public void pool_checksInBitmapSize() throws Exception {
+        if (!BitmapPool.isSupported()) {
+            return;
+        }
+        BitmapPool pool = new BitmapPool(BITMAP_BYTES * 100);
+        Bitmap bitmap = createBitmap();
+        pool.put(bitmap);
+        // 不可变图片不能用作 inBitmap
+        pool.put(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888).copy(
+                Bitmap.Config.ARGB_8888, false));
+        assertEquals(1, pool.getPutCount());
+
+        assertNull(pool.get(11, 10, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(2, 2, Bitmap.Config.ARGB_8888));
+        assertSame(bitmap, pool.get(5, 10, Bitmap.Config.ARGB_8888));
+        assertEquals(0, pool.getCurrentBytes());
+    }
+
+    private static Bitmap createBitmap() {
+        return Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+    }
+}
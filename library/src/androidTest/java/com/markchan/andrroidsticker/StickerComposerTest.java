@@ -0,0 +1,152 @@
+package com.markchan.andrroidsticker;
+
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import com.markchan.andrroidsticker.StickerAttacher.Component;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * 合成结果与屏幕显示的像素对比.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StickerComposerTest {
+
+    private static final int VIEW_WIDTH = 400;
+    private static final int VIEW_HEIGHT = 300;
+
+    /** 单通道允许的最大差值 */
+    private static final int TOLERANCE = 2;
+
+    @Test
+    public void compose_matchesScreen() throws Exception {
+        Bitmap background = createBackground(VIEW_WIDTH, VIEW_HEIGHT);
+        StickerAttacher sticker = createSticker();
+
+        Bitmap screen = drawScreen(background, sticker, 1F);
+        Bitmap composed = new StickerComposer(background)
+                .addSticker(sticker)
+                .composeBlocking();
+
+        assertSimilar(screen, composed);
+    }
+
+    @Test
+    public void compose_mapsViewToLargerImage() throws Exception {
+        // 底图分辨率是显示尺寸的两倍
+        Bitmap background = createBackground(VIEW_WIDTH * 2, VIEW_HEIGHT * 2);
+        StickerAttacher sticker = createSticker();
+        Matrix viewToImage = new Matrix();
+        viewToImage.setScale(2F, 2F);
+
+        Bitmap screen = drawScreen(background, sticker, 2F);
+        Bitmap composed = new StickerComposer(background)
+                .setViewMatrix(viewToImage)
+                .addSticker(sticker)
+                .composeBlocking();
+
+        assertSimilar(screen, composed);
+    }
+
+    @Test
+    public void compose_tilesMatchSinglePass() throws Exception {
+        Bitmap background = createBackground(VIEW_WIDTH, VIEW_HEIGHT);
+        StickerAttacher sticker = createSticker();
+
+        Bitmap singlePass = new StickerComposer(background)
+                .addSticker(sticker)
+                .composeBlocking();
+
+        // 把逐块输出拼回整张图
+        final Bitmap tiled = Bitmap.createBitmap(VIEW_WIDTH, VIEW_HEIGHT,
+                Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(tiled);
+        new StickerComposer(background)
+                .setTileSize(37)
+                .addSticker(sticker)
+                .composeBlocking(new StickerComposer.TileSink() {
+                    @Override
+                    public void onStart(int width, int height) {
+                    }
+
+                    @Override
+                    public void onTile(Bitmap tile, int left, int top, int width, int height) {
+                        canvas.drawBitmap(tile, new Rect(0, 0, width, height),
+                                new Rect(left, top, left + width, top + height), null);
+                    }
+
+                    @Override
+                    public void onFinish() {
+                    }
+                });
+
+        assertSimilar(singlePass, tiled);
+    }
+
+    private static StickerAttacher createSticker() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        Bitmap bitmap = Bitmap.createBitmap(120, 80, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            for (int x = 0; x < bitmap.getWidth(); x++) {
+                bitmap.setPixel(x, y, Color.argb(255, x * 2, y * 3, (x + y) % 256));
+            }
+        }
+        Bitmap icon = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+        StickerAttacher sticker = new StickerAttacher(context, new Component(bitmap),
+                new Component(icon), new Component(icon));
+        sticker.setSelected(false);
+        sticker.drag(130, 90);
+        sticker.scale(1.7F, 190, 130);
+        sticker.rotate(33F);
+        return sticker;
+    }
+
+    private static Bitmap createBackground(int width, int height) {
+        Bitmap background = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        background.eraseColor(Color.rgb(30, 60, 90));
+        return background;
+    }
+
+    /**
+     * 按 StickerView 的方式绘制, 按底图与显示尺寸的比例放大
+     */
+    private static Bitmap drawScreen(Bitmap background, StickerAttacher sticker, float scale) {
+        Bitmap screen = Bitmap.createBitmap(background.getWidth(), background.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(screen);
+        canvas.drawBitmap(background, 0, 0, null);
+        canvas.scale(scale, scale);
+        sticker.draw(canvas);
+        return screen;
+    }
+
+    private static void assertSimilar(Bitmap expected, Bitmap actual) {
+        assertTrue(expected.getWidth() == actual.getWidth()
+                && expected.getHeight() == actual.getHeight());
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        int[] expectedPixels = new int[width * height];
+        int[] actualPixels = new int[width * height];
+        expected.getPixels(expectedPixels, 0, width, 0, 0, width, height);
+        actual.getPixels(actualPixels, 0, width, 0, 0, width, height);
+        for (int i = 0; i < expectedPixels.length; i++) {
+            int e = expectedPixels[i];
+            int a = actualPixels[i];
+            int diff = Math.max(
+                    Math.max(Math.abs(Color.alpha(e) - Color.alpha(a)),
+                            Math.abs(Color.red(e) - Color.red(a))),
+                    Math.max(Math.abs(Color.green(e) - Color.green(a)),
+                            Math.abs(Color.blue(e) - Color.blue(a))));
+            assertTrue("pixel (" + i % width + ", " + i / width + ") differs by " + diff,
+                    diff <= TOLERANCE);
+        }
+    }
+}
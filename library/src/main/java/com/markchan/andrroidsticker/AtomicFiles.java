@@ -0,0 +1,36 @@
+package com.markchan.andrroidsticker;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 先写临时文件再重命名为目标文件, 写入中途失败或崩溃不会留下不完整的目标文件.
+ *
+ * 依赖 {@link File#renameTo(File)} 覆盖已有文件, 在 Android 及其他 POSIX 文件系统上这一步是原子的.
+ * 重命名失败时不会先删除目标文件再重试, 那样在两步之间崩溃会同时丢失新旧内容;
+ * 这里删除临时文件并抛出异常, 目标文件保持原样.
+ */
+public final class AtomicFiles {
+
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * 目标文件对应的临时文件, 与目标文件在同一目录下
+     */
+    public static File getTempFile(File target) {
+        return new File(target.getPath() + TEMP_SUFFIX);
+    }
+
+    /**
+     * 用写完并关闭的临时文件替换目标文件
+     */
+    public static void commit(File tempFile, File target) throws IOException {
+        if (!tempFile.renameTo(target)) {
+            tempFile.delete();
+            throw new IOException("Unable to rename " + tempFile + " to " + target);
+        }
+    }
+}
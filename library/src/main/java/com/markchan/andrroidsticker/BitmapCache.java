@@ -0,0 +1,199 @@
+package com.markchan.andrroidsticker;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内共享的贴纸图片缓存.
+ *
+ * 按字节数限制容量的 LRU 缓存, 以图片来源(文件路径或资源 id)加采样尺寸作为 key,
+ * 同一张贴纸添加多次也只占用一份内存. 正在显示的图片通过 {@link #acquire(String)} 钉住,
+ * 钉住期间即使被 LRU 淘汰也不会回调 {@link OnEvictedListener}, 直到最后一次
+ * {@link #release(String)}. 被删除贴纸的图片通过 {@link #releaseAndEvict(String)} 立即移出缓存.
+ */
+public class BitmapCache {
+
+    public interface OnEvictedListener {
+
+        /**
+         * 图片已离开缓存且没有被任何贴纸使用
+         */
+        void onEvicted(String key, Bitmap bitmap);
+    }
+
+    private static final class Entry {
+
+        final Bitmap bitmap;
+        int pinCount;
+        boolean evicted;
+
+        Entry(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+    }
+
+    private static volatile BitmapCache sInstance;
+
+    private final LruCache<String, Entry> mLruCache;
+
+    /** 被钉住的图片, 包括已被 LRU 淘汰但仍在使用中的 */
+    private final HashMap<String, Entry> mPinnedEntries = new HashMap<>();
+
+    private final CopyOnWriteArrayList<OnEvictedListener> mListeners =
+            new CopyOnWriteArrayList<>();
+
+    public static BitmapCache getInstance() {
+        if (sInstance == null) {
+            synchronized (BitmapCache.class) {
+                if (sInstance == null) {
+                    // 默认使用最大可用内存的 1/8
+                    sInstance = new BitmapCache((int) (Runtime.getRuntime().maxMemory() / 8));
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public BitmapCache(int maxBytes) {
+        mLruCache = new LruCache<String, Entry>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Entry value) {
+                return getBitmapSize(value.bitmap);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Entry oldValue,
+                    Entry newValue) {
+                if (oldValue == newValue) {
+                    return;
+                }
+                if (oldValue.pinCount > 0) {
+                    oldValue.evicted = true;
+                } else {
+                    notifyEvicted(key, oldValue.bitmap);
+                }
+            }
+        };
+    }
+
+    public static String fileKey(String path, int reqWidth, int reqHeight) {
+        return path + "@" + reqWidth + "x" + reqHeight;
+    }
+
+    public static String resourceKey(int resId) {
+        return "res:" + resId;
+    }
+
+    public static int getBitmapSize(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    @Nullable
+    public synchronized Bitmap get(String key) {
+        Entry entry = findEntry(key);
+        return entry != null ? entry.bitmap : null;
+    }
+
+    /**
+     * 放入图片, 已有同 key 图片时保留已缓存的那一份
+     */
+    public synchronized void put(String key, Bitmap bitmap) {
+        if (findEntry(key) == null) {
+            mLruCache.put(key, new Entry(bitmap));
+        }
+    }
+
+    /**
+     * 取出并钉住图片, 使用结束后需调用 {@link #release(String)}
+     */
+    @Nullable
+    public synchronized Bitmap acquire(String key) {
+        Entry entry = findEntry(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.pinCount++;
+        mPinnedEntries.put(key, entry);
+        return entry.bitmap;
+    }
+
+    /**
+     * 放入并钉住图片, 已有同 key 图片时返回已缓存的那一份
+     */
+    public synchronized Bitmap putAndAcquire(String key, Bitmap bitmap) {
+        put(key, bitmap);
+        return acquire(key);
+    }
+
+    public synchronized void release(String key) {
+        Entry entry = mPinnedEntries.get(key);
+        if (entry == null || --entry.pinCount > 0) {
+            return;
+        }
+        mPinnedEntries.remove(key);
+        if (entry.evicted) {
+            notifyEvicted(key, entry.bitmap);
+        }
+    }
+
+    /**
+     * 释放图片, 最后一个使用者释放后立即移出缓存并回调 {@link OnEvictedListener},
+     * 用于被删除的贴纸, 不必等 LRU 淘汰就能归还图片池
+     */
+    public synchronized void releaseAndEvict(String key) {
+        Entry entry = mPinnedEntries.get(key);
+        if (entry == null || --entry.pinCount > 0) {
+            return;
+        }
+        mPinnedEntries.remove(key);
+        if (entry.evicted) {
+            notifyEvicted(key, entry.bitmap);
+        } else {
+            // 未钉住的图片移出 LRU 时在 entryRemoved 中回调
+            mLruCache.remove(key);
+        }
+    }
+
+    public synchronized void evictAll() {
+        mLruCache.evictAll();
+    }
+
+    public synchronized int size() {
+        return mLruCache.size();
+    }
+
+    public void addOnEvictedListener(OnEvictedListener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeOnEvictedListener(OnEvictedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    @Nullable
+    private Entry findEntry(String key) {
+        Entry entry = mLruCache.get(key);
+        if (entry == null) {
+            entry = mPinnedEntries.get(key);
+            if (entry != null && entry.evicted) {
+                // 已被淘汰但仍在使用的图片再次被访问, 放回 LRU
+                entry.evicted = false;
+                mLruCache.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    private void notifyEvicted(String key, Bitmap bitmap) {
+        for (OnEvictedListener listener : mListeners) {
+            listener.onEvicted(key, bitmap);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.markchan.andrroidsticker;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Build.VERSION_CODES;
+import android.support.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 可复用图片池.
+ *
+ * 离开 {@link BitmapCache} 且不再被贴纸使用的可变图片按占用字节数分桶保存,
+ * 解码新贴纸时通过 {@link android.graphics.BitmapFactory.Options#inBitmap} 复用,
+ * 减少频繁添加删除贴纸时的大块内存分配和 GC 停顿.
+ * 任意尺寸复用需要 API 19, 更低版本不入池.
+ */
+public class BitmapPool {
+
+    /** 复用图片最多比需要的大几倍, 避免小贴纸占用大图片 */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private static volatile BitmapPool sInstance;
+
+    private final int mMaxBytes;
+    private int mCurrentBytes;
+
+    /** 按占用字节数分桶, 桶内后放入的先取出 */
+    private final TreeMap<Integer, ArrayList<Bitmap>> mBuckets = new TreeMap<>();
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mPutCount;
+    private int mEvictionCount;
+
+    public static BitmapPool getInstance() {
+        if (sInstance == null) {
+            synchronized (BitmapPool.class) {
+                if (sInstance == null) {
+                    // 默认使用最大可用内存的 1/16
+                    sInstance = new BitmapPool((int) (Runtime.getRuntime().maxMemory() / 16));
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public BitmapPool(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= VERSION_CODES.KITKAT;
+    }
+
+    /**
+     * 归还图片, 调用后不能再使用该图片
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (!isSupported() || bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int size = BitmapCache.getBitmapSize(bitmap);
+        if (size > mMaxBytes) {
+            return;
+        }
+        ArrayList<Bitmap> bucket = mBuckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.add(bitmap);
+        mCurrentBytes += size;
+        mPutCount++;
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * 取出一张可以容纳 width x height 的图片, 用作 inBitmap
+     */
+    @Nullable
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        if (!isSupported()) {
+            return null;
+        }
+        int required = width * height * getBytesPerPixel(config);
+        Map.Entry<Integer, ArrayList<Bitmap>> entry = mBuckets.ceilingEntry(required);
+        if (entry == null || !canReuse(entry.getKey(), required)) {
+            mMissCount++;
+            return null;
+        }
+        ArrayList<Bitmap> bucket = entry.getValue();
+        Bitmap bitmap = bucket.remove(bucket.size() - 1);
+        if (bucket.isEmpty()) {
+            mBuckets.remove(entry.getKey());
+        }
+        mCurrentBytes -= entry.getKey();
+        mHitCount++;
+        return bitmap;
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getPutCount() {
+        return mPutCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    public synchronized int getCurrentBytes() {
+        return mCurrentBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool[hits=" + mHitCount + ", misses=" + mMissCount + ", puts=" + mPutCount
+                + ", evictions=" + mEvictionCount + ", bytes=" + mCurrentBytes + "/" + mMaxBytes
+                + "]";
+    }
+
+    /**
+     * 超出容量时先丢弃最大的图片
+     */
+    private void trimToSize(int maxBytes) {
+        while (mCurrentBytes > maxBytes && !mBuckets.isEmpty()) {
+            Map.Entry<Integer, ArrayList<Bitmap>> entry = mBuckets.lastEntry();
+            ArrayList<Bitmap> bucket = entry.getValue();
+            bucket.remove(0).recycle();
+            if (bucket.isEmpty()) {
+                mBuckets.remove(entry.getKey());
+            }
+            mCurrentBytes -= entry.getKey();
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * 占用 bitmapBytes 字节的图片能否用作需要 requiredBytes 字节的 inBitmap
+     */
+    static boolean canReuse(int bitmapBytes, int requiredBytes) {
+        return bitmapBytes >= requiredBytes && bitmapBytes <= requiredBytes * MAX_SIZE_MULTIPLE;
+    }
+
+    static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == null) {
+            return 4;
+        }
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
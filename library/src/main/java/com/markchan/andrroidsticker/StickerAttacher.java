@@ -6,10 +6,12 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.Point;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.view.MotionEvent;
 import android.view.View;
+import com.markchan.andrroidsticker.geometry.Affine;
+import com.markchan.andrroidsticker.geometry.Geometry;
 
 /**
  * Created by Mark on 2017/6/29.
@@ -22,9 +24,24 @@ public class StickerAttacher implements Sticker, View.OnTouchListener {
         private int mBitmapWidth;
         private int mBitmapHeight;
 
+        /** 图片在 {@link BitmapCache} 中被钉住时的 key */
+        private String mCacheKey;
+
         public Component() {
         }
 
+        public Component(Bitmap bitmap) {
+            this(bitmap, bitmap.getWidth(), bitmap.getHeight());
+        }
+
+        /**
+         * 使用已从 {@link BitmapCache} 钉住的图片, 不再使用时需调用 {@link #release()}
+         */
+        public Component(String cacheKey, Bitmap bitmap) {
+            this(bitmap);
+            mCacheKey = cacheKey;
+        }
+
         public Component(Bitmap bitmap, int bitmapWidth, int bitmapHeight) {
             mBitmap = bitmap;
             mBitmapWidth = bitmapWidth;
@@ -54,44 +71,115 @@ public class StickerAttacher implements Sticker, View.OnTouchListener {
         public void setBitmapHeight(int bitmapHeight) {
             mBitmapHeight = bitmapHeight;
         }
+
+        public String getCacheKey() {
+            return mCacheKey;
+        }
+
+        /**
+         * 解除对缓存图片的钉住, 之后图片可以被缓存淘汰
+         */
+        public void release() {
+            if (mCacheKey != null) {
+                BitmapCache.getInstance().release(mCacheKey);
+                mCacheKey = null;
+            }
+        }
+        /**
+         * 解除钉住, 没有其他贴纸使用时立即移出缓存, 图片随即归还 {@link BitmapPool}
+         */
+        public void releaseToPool() {
+            if (mCacheKey != null) {
+                BitmapCache.getInstance().releaseAndEvict(mCacheKey);
+                mCacheKey = null;
+            }
+        }
     }
 
     private static final int CTR_LEFT_TOP = 0;
     private static final int CTR_RIGHT_BOTTOM = 2;
     private static final int CTR_MID_MID = 4;
-    private static final int CTR_NONE = -1;
+    private static final int CTR_NONE = StickerHitTester.CTR_NONE;
 
-    private static final int OPT_DEAULT = -1;
-    private static final int OPT_DRAG = 0;
-    private static final int OPT_SCALE = 1;
-    private static final int OPT_ROTATE = 2;
-    private static final int OPT_SELECT = 3;
+    /** 最小缩放比 */
+    private static final float MIN_SCALE = 0.3F;
+    /** 最大缩放比 */
+    private static final float MAX_SCALE = 10F;
+
+    /** 贴纸图片解码完成前的占位色 */
+    private static final int PLACEHOLDER_COLOR = 0x40FFFFFF;
 
     private Context mContext;
 
     private int mCurrCtr = CTR_NONE;
 
-    private int mLastOpt = OPT_SELECT;
+    /** 当前手势是否从贴纸或控制点上开始 */
+    private boolean mTracking;
 
     private boolean mSelected = true;
     private boolean mActive = true;
 
-    private final Component mStickerComponent;
+    private Component mStickerComponent;
     private final Component mDeleteComponent;
     private final Component mControllerComponent;
 
+    /**
+     * <pre>
+     * 0, 1 ------ 2, 3
+     *  |           |
+     *  |    8, 9   |
+     *  |           |
+     * 6, 7 ------ 4, 5
+     * </pre>
+     */
     private final float[] mSrcPointArr;
     private final float[] mDestPointArr;
 
-    private final Matrix mMatrix;
+    /**
+     * 分解后的变换是唯一的状态来源: 贴纸中心点在容器中的坐标、等比缩放比和旋转角度.
+     * 仿射变换只在变换变化后重建一次, 不会因为反复叠加缩放旋转而累积误差产生错切.
+     * 命中检测和顶点计算直接使用 {@link #mTransform}, 只有绘制和导出时才同步到 {@link #mMatrix}
+     */
+    private float mCenterX;
+    private float mCenterY;
+    private float mScale = 1.0F;
+    private float mRotation;
 
-    private final Point mPrePrivot;
-    private final Point mPostPrivot;
+    /** 中心点的可移动范围, 为空时不限制 */
+    private final RectF mMovementBounds = new RectF();
 
-    private final Point mLastPoint;
+    private final float[] mTransform = new float[Affine.SIZE];
+    private boolean mTransformDirty;
+
+    private final Matrix mMatrix;
+    private boolean mMatrixSynced = true;
+    private final float[] mMatrixValues = new float[9];
+
+    private final StickerHitTester mHitTester = new StickerHitTester();
+    private StickerGestureDetector mGestureDetector;
+
+    /** 按帧合并手势时, 变换应用后重绘 */
+    private final StickerGestureDetector.Callback mGestureCallback =
+            new StickerGestureDetector.Callback() {
+                @Override
+                public void onTransformApplied(Sticker sticker) {
+                    if (mHost != null) {
+                        invalidate(mHost);
+                    }
+                }
+            };
+
+    /** 最近一次触摸所在的容器 */
+    private View mHost;
 
     private final Paint mPaint;
     private final Paint mFramePaint;
+    private final Paint mPlaceholderPaint;
+
+    /** 上一次请求重绘时贴纸所占区域 */
+    private final RectF mLastBounds = new RectF();
+    private final RectF mBounds = new RectF();
+    private final Rect mDirtyRect = new Rect();
 
     public StickerAttacher(Context context, Component stickerComponent, Component deleteComponent,
             Component controllerComponent) {
@@ -104,21 +192,22 @@ public class StickerAttacher implements Sticker, View.OnTouchListener {
                 stickerComponent.getBitmapWidth(), 0,
                 stickerComponent.getBitmapWidth(), stickerComponent.getBitmapHeight(),
                 0, stickerComponent.getBitmapHeight(),
-                stickerComponent.getBitmapWidth() / 2, stickerComponent.getBitmapHeight() / 2
+                stickerComponent.getBitmapWidth() / 2F, stickerComponent.getBitmapHeight() / 2F
         };
         mDestPointArr = mSrcPointArr.clone();
         mMatrix = new Matrix();
+        Affine.setIdentity(mTransform);
+        mCenterX = mSrcPointArr[8];
+        mCenterY = mSrcPointArr[9];
 
-        mPrePrivot = new Point(stickerComponent.getBitmapWidth() / 2,
-                stickerComponent.getBitmapHeight() / 2);
-        mPostPrivot = new Point(stickerComponent.getBitmapWidth() / 2,
-                stickerComponent.getBitmapHeight() / 2);
-
-        mLastPoint = new Point();
-
-        mPaint = new Paint();
+        // 与 StickerComposer 导出时一致, 旋转缩放后的贴纸屏幕显示与保存结果相同
+        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
         mFramePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         mFramePaint.setColor(Color.WHITE);
+        mPlaceholderPaint = new Paint();
+        mPlaceholderPaint.setColor(PLACEHOLDER_COLOR);
+
+        mGestureDetector = new StickerGestureDetector(mGestureCallback);
     }
 
     @Override
@@ -126,13 +215,26 @@ public class StickerAttacher implements Sticker, View.OnTouchListener {
         if (!mActive) {
             return;
         }
-        canvas.drawBitmap(mStickerComponent.getBitmap(), mMatrix, mPaint);
+        syncMatrix();
+        if (mStickerComponent.getBitmap() != null) {
+            canvas.drawBitmap(mStickerComponent.getBitmap(), mMatrix, mPaint);
+        } else {
+            drawPlaceholder(canvas);
+        }
         if (mSelected) {
             drawFrame(canvas);
             drawActionComponent(canvas);
         }
     }
 
+    private void drawPlaceholder(Canvas canvas) {
+        int saveCount = canvas.save();
+        canvas.concat(mMatrix);
+        canvas.drawRect(0, 0, mStickerComponent.getBitmapWidth(),
+                mStickerComponent.getBitmapHeight(), mPlaceholderPaint);
+        canvas.restoreToCount(saveCount);
+    }
+
     private void drawFrame(Canvas canvas) {
         canvas.drawLine(mDestPointArr[0], mDestPointArr[1], mDestPointArr[2], mDestPointArr[3],
                 mFramePaint);
@@ -153,127 +255,346 @@ public class StickerAttacher implements Sticker, View.OnTouchListener {
                 mDestPointArr[5] - mControllerComponent.getBitmapHeight() / 2, mPaint);
     }
 
+    /**
+     * 按在右下角控制点上时单指旋转缩放, 按在贴纸上时交给手势识别拖动, 第二根手指按下后改为
+     * 双指拖动、缩放和旋转
+     */
     @Override
     public boolean onTouch(View v, MotionEvent event) {
-        int x = (int) event.getX();
-        int y = (int) event.getY();
-
-        if (!isOnSticker(x, y) && getCurrCtr(x, y) == CTR_NONE) {
-            mSelected = false;
-            // 重绘
-        } else if (getCurrCtr(x, y) == CTR_LEFT_TOP) {
-            mActive = false;
-            // 重绘
+        mHost = v;
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                int x = (int) event.getX();
+                int y = (int) event.getY();
+                mCurrCtr = getCurrCtr(x, y);
+                if (mCurrCtr == CTR_LEFT_TOP) {
+                    delete();
+                    invalidate(v);
+                    return true;
+                }
+                mTracking = mCurrCtr != CTR_NONE || isOnSticker(x, y);
+                mSelected = mTracking;
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                mCurrCtr = CTR_NONE;
+                break;
+            default:
+                break;
+        }
+        if (!mTracking) {
+            invalidate(v);
+            return true;
+        }
+
+        if (mCurrCtr == CTR_RIGHT_BOTTOM) {
+            if (event.getActionMasked() == MotionEvent.ACTION_MOVE) {
+                transformByController(event);
+            }
         } else {
-            int option = OPT_DEAULT;
-            option = getCurrOpt(event);
-            switch (option) {
-                case OPT_DRAG:
-                    if (isOnSticker(x, y)) {
-                        drag(x, y);
-                    }
-                    break;
-                case OPT_ROTATE:
-                    rotate(event);
-                    scale(event);
-                    break;
-                default:
-                    break;
+            // 控制点拖动中按下第二根手指时, 手势识别从这个事件开始接管
+            mGestureDetector.onTouchEvent(event, this);
+            if (event.getActionMasked() == MotionEvent.ACTION_MOVE
+                    && mGestureDetector.isCoalescing()) {
+                // 在下一帧应用变换后重绘
+                return true;
             }
-
-            mLastPoint.x = x;
-            mLastPoint.y = y;
-            mLastOpt = option;
-            mSelected = true;
-            // 重绘
         }
-
+        if (event.getActionMasked() == MotionEvent.ACTION_UP
+                || event.getActionMasked() == MotionEvent.ACTION_CANCEL) {
+            mCurrCtr = CTR_NONE;
+            mTracking = false;
+        }
+        invalidate(v);
         return true;
     }
 
-    private void scale(MotionEvent event) {
-
+    /**
+     * 右下角控制点跟随触摸点: 触摸点到中心点的距离决定缩放比, 连线方向决定旋转角度
+     */
+    private void transformByController(MotionEvent event) {
+        float dx = event.getX() - mCenterX;
+        float dy = event.getY() - mCenterY;
+        float srcDx = mSrcPointArr[4] - mSrcPointArr[8];
+        float srcDy = mSrcPointArr[5] - mSrcPointArr[9];
+        float srcDistance = Geometry.distance(0, 0, srcDx, srcDy);
+        if (srcDistance > 0) {
+            setScale(Geometry.distance(0, 0, dx, dy) / srcDistance);
+        }
+        if (dx != 0 || dy != 0) {
+            setRotation(Geometry.degrees(0, 0, dx, dy) - Geometry.degrees(0, 0, srcDx, srcDy));
+        }
     }
 
-    private void rotate(MotionEvent event) {
-
+    private boolean isOnSticker(int x, int y) {
+        updateTransform();
+        return mHitTester.isOnSticker(mTransform, mDestPointArr, x, y,
+                mStickerComponent.getBitmapWidth(), mStickerComponent.getBitmapHeight());
     }
 
-    private boolean isOnSticker(int x, int y) {
-        Matrix inMatrix = new Matrix();
-        mMatrix.invert(inMatrix);
+    private int getCurrCtr(int x, int y) {
+        updateTransform();
+        return StickerHitTester.getCurrCtr(mDestPointArr, x, y,
+                mControllerComponent.getBitmapWidth(), mControllerComponent.getBitmapHeight());
+    }
 
-        float[] tempPointArr = new float[]{0, 0};
-        inMatrix.mapPoints(tempPointArr, new float[]{x, y});
-        if (tempPointArr[0] > 0 && tempPointArr[0] < mStickerComponent.getBitmapWidth()
-                && tempPointArr[1] > 0 && tempPointArr[1] < mStickerComponent.getBitmapHeight()) {
-            return true;
-        } else {
+    /**
+     * 判断触摸点是否落在贴纸上, 选中时控制点也算在内
+     */
+    boolean isHit(int x, int y) {
+        if (!mActive) {
             return false;
         }
+        return isOnSticker(x, y) || (mSelected && getCurrCtr(x, y) != CTR_NONE);
     }
 
-    private int getCurrCtr(int x, int y) {
-        Rect rect = new Rect(x - mControllerComponent.getBitmapWidth() / 2,
-                y - mControllerComponent.getBitmapHeight()
-                , x + mControllerComponent.getBitmapWidth() / 2,
-                y + mControllerComponent.getBitmapHeight());
-        int index = 0;
-        for (int i = 0; i < mDestPointArr.length; i += 2) {
-            if (rect.contains((int) mDestPointArr[i], (int) mDestPointArr[i + 1])) {
-                return index;
-            }
-            ++index;
+    /**
+     * 获取贴纸在视图中的包围盒, 选中时包含控制点图标及其触摸范围
+     */
+    public void getBounds(RectF bounds) {
+        updateTransform();
+        float left = mDestPointArr[0];
+        float top = mDestPointArr[1];
+        float right = left;
+        float bottom = top;
+        for (int i = 2; i < 8; i += 2) {
+            left = Math.min(left, mDestPointArr[i]);
+            right = Math.max(right, mDestPointArr[i]);
+            top = Math.min(top, mDestPointArr[i + 1]);
+            bottom = Math.max(bottom, mDestPointArr[i + 1]);
         }
-        return CTR_NONE;
+        if (mSelected) {
+            // 控制点的触摸范围水平方向为半个图标宽, 竖直方向上下各一整个图标高
+            // (见 StickerHitTester#getCurrCtr), 比图标本身的绘制范围大
+            float touchOutsetX = mControllerComponent.getBitmapWidth() / 2F;
+            float touchOutsetY = mControllerComponent.getBitmapHeight();
+            float outsetX = Math.max(touchOutsetX, mDeleteComponent.getBitmapWidth() / 2F);
+            float outsetY = Math.max(touchOutsetY, mDeleteComponent.getBitmapHeight() / 2F);
+            left -= outsetX;
+            top -= outsetY;
+            right += outsetX;
+            bottom += outsetY;
+        }
+        bounds.set(left, top, right, bottom);
     }
 
-    private int getCurrOpt(MotionEvent event) {
-        int x = (int) event.getX();
-        int y = (int) event.getY();
-        int currOpt = mLastOpt;
-        switch (event.getAction()) {
-            case MotionEvent.ACTION_DOWN:
-                mCurrCtr = getCurrCtr(x, y);
-                if (mCurrCtr != CTR_NONE || isOnSticker(x, y)) {
-                    currOpt = OPT_SELECT;
-                }
-                break;
-            case MotionEvent.ACTION_MOVE:
-                if (mCurrCtr == CTR_LEFT_TOP) {
-                    delete();
-                } else if (mCurrCtr == CTR_RIGHT_BOTTOM) {
-                    currOpt = OPT_DRAG;
-                } else if (mLastOpt == OPT_SELECT) {
-                    currOpt = OPT_DRAG;
-                }
-                break;
-            case MotionEvent.ACTION_UP:
-                currOpt = OPT_SELECT;
-                break;
-            default:
-                break;
+    /**
+     * 只重绘贴纸上一次与当前所占区域的并集, 而不是整个视图
+     */
+    public void invalidate(View host) {
+        if (mActive) {
+            getBounds(mBounds);
+        } else {
+            mBounds.setEmpty();
+        }
+        mLastBounds.union(mBounds);
+        if (!mLastBounds.isEmpty()) {
+            mLastBounds.roundOut(mDirtyRect);
+            // 预留抗锯齿边缘
+            mDirtyRect.inset(-1, -1);
+            host.invalidate(mDirtyRect);
         }
-        return currOpt;
+        mLastBounds.set(mBounds);
     }
 
+    /**
+     * 是否把一帧内的多个移动事件合并为一次变换, 默认开启. 高刷新率的触摸屏每帧会收到多个移动事件,
+     * 合并后矩阵计算和重绘次数不超过屏幕刷新率
+     */
+    public void setTouchCoalescing(boolean coalescing) {
+        if (coalescing != mGestureDetector.isCoalescing()) {
+            mGestureDetector.flush();
+            mGestureDetector = coalescing ? new StickerGestureDetector(mGestureCallback)
+                    : new StickerGestureDetector();
+        }
+    }
+
+    /**
+     * 移动中心点, 不超出可移动范围
+     */
     @Override
     public void drag(float dx, float dy) {
-
+        setCenter(mCenterX + dx, mCenterY + dy);
     }
 
+    /**
+     * 以指定点为中心缩放, 缩放比限制在最小与最大缩放比之间
+     */
     @Override
     public void scale(float scaleFactor, float focusX, float focusY) {
-
+        float oldScale = mScale;
+        setScale(mScale * scaleFactor);
+        if (mScale == oldScale) {
+            return;
+        }
+        // 中心点到缩放中心的距离按实际缩放比变化
+        float factor = mScale / oldScale;
+        setCenter(focusX + (mCenterX - focusX) * factor, focusY + (mCenterY - focusY) * factor);
     }
 
+    /**
+     * 绕贴纸中心点旋转
+     */
     @Override
     public void rotate(float degrees) {
+        setRotation(mRotation + degrees);
+    }
 
+    /**
+     * 限制贴纸中心点的可移动范围, 如容器大小, 传入空区域时不限制
+     */
+    public void setMovementBounds(float left, float top, float right, float bottom) {
+        mMovementBounds.set(left, top, right, bottom);
+        setCenter(mCenterX, mCenterY);
+    }
+
+    private void setCenter(float centerX, float centerY) {
+        if (!mMovementBounds.isEmpty()) {
+            centerX = Math.max(mMovementBounds.left, Math.min(centerX, mMovementBounds.right));
+            centerY = Math.max(mMovementBounds.top, Math.min(centerY, mMovementBounds.bottom));
+        }
+        if (centerX != mCenterX || centerY != mCenterY) {
+            mCenterX = centerX;
+            mCenterY = centerY;
+            onTransformChanged();
+        }
+    }
+
+    private void setScale(float scale) {
+        scale = Math.max(MIN_SCALE, Math.min(scale, MAX_SCALE));
+        if (scale != mScale) {
+            mScale = scale;
+            onTransformChanged();
+        }
+    }
+
+    /**
+     * 角度保持在 (-180, 180] 之间
+     */
+    private void setRotation(float degrees) {
+        degrees = Geometry.normalizeDegrees(degrees);
+        if (degrees != mRotation) {
+            mRotation = degrees;
+            onTransformChanged();
+        }
+    }
+
+    private void onTransformChanged() {
+        mTransformDirty = true;
+        mHitTester.invalidate();
+    }
+
+    /**
+     * 按分解后的变换重建仿射变换和顶点坐标
+     */
+    private void updateTransform() {
+        if (!mTransformDirty) {
+            return;
+        }
+        mTransformDirty = false;
+        Affine.set(mTransform, mSrcPointArr[8], mSrcPointArr[9], mScale, mRotation,
+                mCenterX, mCenterY);
+        Affine.mapPoints(mTransform, mDestPointArr, mSrcPointArr);
+        mMatrixSynced = false;
+    }
+
+    /**
+     * 绘制和导出前把仿射变换同步到 {@link Matrix}
+     */
+    private void syncMatrix() {
+        updateTransform();
+        if (!mMatrixSynced) {
+            Affine.getValues(mTransform, mMatrixValues);
+            mMatrix.setValues(mMatrixValues);
+            mMatrixSynced = true;
+        }
     }
 
     @Override
     public void delete() {
+        if (mActive) {
+            // 控制点图标所有贴纸共用, 只有贴纸图片归还图片池
+            mStickerComponent.releaseToPool();
+            mDeleteComponent.release();
+            mControllerComponent.release();
+        }
+        mActive = false;
+        mSelected = false;
+    }
+
+    public boolean isSelected() {
+        return mSelected;
+    }
+
+    public void setSelected(boolean selected) {
+        mSelected = selected;
+    }
+
+    /**
+     * 判断贴纸是否已被移除
+     */
+    public boolean isActive() {
+        return mActive;
+    }
+
+    public Component getStickerComponent() {
+        return mStickerComponent;
+    }
+
+    /**
+     * 替换贴纸图片(如占位图解码完成), 保持当前的中心点、缩放和旋转
+     */
+    public void setStickerComponent(Component stickerComponent) {
+        int width = stickerComponent.getBitmapWidth();
+        int height = stickerComponent.getBitmapHeight();
+        mStickerComponent.release();
+        mStickerComponent = stickerComponent;
+
+        mSrcPointArr[2] = width;
+        mSrcPointArr[4] = width;
+        mSrcPointArr[5] = height;
+        mSrcPointArr[7] = height;
+        mSrcPointArr[8] = width / 2F;
+        mSrcPointArr[9] = height / 2F;
+        onTransformChanged();
+    }
+
+    /**
+     * 获取贴纸图片到容器坐标的变换矩阵
+     */
+    public void getMatrix(Matrix matrix) {
+        syncMatrix();
+        matrix.set(mMatrix);
+    }
+
+    /**
+     * 获取贴纸图片到底图像素坐标的变换矩阵, 导出时直接用它绘制贴纸
+     *
+     * @param viewToImage 容器坐标到底图像素坐标的变换
+     */
+    public void getMatrix(Matrix viewToImage, Matrix matrix) {
+        syncMatrix();
+        matrix.set(mMatrix);
+        matrix.postConcat(viewToImage);
+    }
+
+    /**
+     * 获取贴纸旋转角度, 范围 (-180, 180]
+     */
+    public float getDegree() {
+        return mRotation;
+    }
+
+    /**
+     * 获取贴纸中心点坐标
+     */
+    public float[] getCenterPoint() {
+        return new float[]{mCenterX, mCenterY};
+    }
 
+    /**
+     * 获取贴纸缩放比例(与原图相比)
+     */
+    public float getScale() {
+        return mScale;
     }
 }
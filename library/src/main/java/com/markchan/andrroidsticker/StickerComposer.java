@@ -0,0 +1,354 @@
+package com.markchan.andrroidsticker;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import com.markchan.andrroidsticker.StickerAttacher.Component;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 贴纸合成.
+ *
+ * 在主线程记录每个贴纸当前的图片和变换矩阵, 然后在后台线程把底图和所有贴纸一次性绘制到同一张输出图上,
+ * 每个贴纸按 {@link StickerAttacher#getMatrix(Matrix, Matrix)} 直接绘制, 不产生中间图片.
+ * 合成到整张输出图时底图和每个贴纸只绘制一次, 贴纸之间检查取消.
+ * 使用 {@link TileSink} 时按固定大小的块逐块绘制, 只分配一块的内存, 每块只绘制与其相交的贴纸,
+ * 块之间检查取消并回调进度.
+ *
+ * 示例应用保存图片使用 {@link #compose(Callback)}, 没有分块: 导出用的 {@link Bitmap#compress} 只能编码整张图,
+ * 系统没有按区域写入 JPEG、PNG、WEBP 的编码器, 所以峰值内存仍是底图加一张同样大小的输出图.
+ * 分块只对能逐块消费结果的接收方有效, 如分块上传或自行实现的流式编码.
+ */
+public class StickerComposer {
+
+    public interface Callback {
+
+        /**
+         * 不使用 {@link TileSink} 时整张图算作一块
+         */
+        void onProgress(int completedTiles, int totalTiles);
+
+        /**
+         * 合成完成, 使用 {@link TileSink} 时 result 为 null
+         */
+        void onComposed(Bitmap result);
+
+        void onFailed(Exception e);
+
+        void onCancelled();
+    }
+
+    /**
+     * 接收绘制完成的块, 在合成线程调用. tile 会被下一块复用, 只有左上角 width x height 有效
+     */
+    public interface TileSink {
+
+        void onStart(int width, int height) throws Exception;
+
+        void onTile(Bitmap tile, int left, int top, int width, int height) throws Exception;
+
+        void onFinish() throws Exception;
+    }
+
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    private static final ExecutorService COMPOSE_EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "StickerComposer");
+                }
+            });
+
+    /**
+     * 合成时使用的贴纸快照
+     */
+    private static final class Layer {
+
+        final Bitmap bitmap;
+        final String cacheKey;
+        final Matrix matrix = new Matrix();
+        final RectF bounds = new RectF();
+
+        Layer(Bitmap bitmap, String cacheKey) {
+            this.bitmap = bitmap;
+            this.cacheKey = cacheKey;
+        }
+    }
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Bitmap mBackground;
+    private final Matrix mViewMatrix = new Matrix();
+    private final List<Layer> mLayers = new ArrayList<>();
+    private int mTileSize = DEFAULT_TILE_SIZE;
+
+    /**
+     * @param background 底图, 输出与底图同尺寸
+     */
+    public StickerComposer(Bitmap background) {
+        mBackground = background;
+    }
+
+    /**
+     * 设置贴纸容器坐标到输出图像素坐标的变换, 需在添加贴纸之前调用
+     */
+    public StickerComposer setViewMatrix(Matrix viewMatrix) {
+        mViewMatrix.set(viewMatrix);
+        return this;
+    }
+
+    /**
+     * 块大小, 只在使用 {@link TileSink} 时生效
+     */
+    public StickerComposer setTileSize(int tileSize) {
+        mTileSize = tileSize;
+        return this;
+    }
+
+    /**
+     * 记录贴纸当前状态, 之后对贴纸的修改不影响本次合成
+     */
+    @MainThread
+    public StickerComposer addSticker(StickerAttacher sticker) {
+        Component component = sticker.getStickerComponent();
+        Bitmap bitmap = component.getBitmap();
+        if (!sticker.isActive() || bitmap == null) {
+            return this;
+        }
+        // 合成期间贴纸可能被删除, 钉住图片避免被缓存淘汰后复用
+        String cacheKey = component.getCacheKey();
+        if (cacheKey != null) {
+            BitmapCache.getInstance().acquire(cacheKey);
+        }
+        Layer layer = new Layer(bitmap, cacheKey);
+        sticker.getMatrix(mViewMatrix, layer.matrix);
+        layer.bounds.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        layer.matrix.mapRect(layer.bounds);
+        mLayers.add(layer);
+        return this;
+    }
+
+    @MainThread
+    public StickerComposer addStickers(List<StickerAttacher> stickers) {
+        for (int i = 0, size = stickers.size(); i < size; i++) {
+            addSticker(stickers.get(i));
+        }
+        return this;
+    }
+
+    /**
+     * 合成到一张新的输出图, 每个 StickerComposer 只能合成一次
+     */
+    public Future<?> compose(Callback callback) {
+        return submit(null, callback);
+    }
+
+    /**
+     * 逐块合成并交给 sink, 不分配整张输出图
+     */
+    public Future<?> compose(TileSink sink, Callback callback) {
+        return submit(sink, callback);
+    }
+
+    /**
+     * 在当前线程合成到一张新的输出图
+     */
+    @WorkerThread
+    public Bitmap composeBlocking() throws Exception {
+        try {
+            return composeSinglePass(null);
+        } finally {
+            releaseLayers();
+        }
+    }
+
+    /**
+     * 在当前线程逐块合成并交给 sink
+     */
+    @WorkerThread
+    public void composeBlocking(TileSink sink) throws Exception {
+        try {
+            composeTiles(sink, null);
+        } finally {
+            releaseLayers();
+        }
+    }
+
+    private Future<?> submit(final TileSink sink, final Callback callback) {
+        final AtomicBoolean started = new AtomicBoolean();
+        FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+                if (!started.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    final Bitmap result;
+                    if (sink == null) {
+                        result = composeSinglePass(callback);
+                    } else {
+                        composeTiles(sink, callback);
+                        result = null;
+                    }
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onComposed(result);
+                        }
+                    });
+                } catch (CancellationException e) {
+                    postCancelled(callback);
+                } catch (final Exception e) {
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onFailed(e);
+                        }
+                    });
+                } finally {
+                    releaseLayers();
+                }
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                // 开始执行前就被取消, 不会再执行, 在这里释放
+                if (isCancelled() && started.compareAndSet(false, true)) {
+                    releaseLayers();
+                    postCancelled(callback);
+                }
+            }
+        };
+        COMPOSE_EXECUTOR.execute(task);
+        return task;
+    }
+
+    private void postCancelled(final Callback callback) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onCancelled();
+            }
+        });
+    }
+
+    /**
+     * 整张输出图本来就要常驻内存, 不再分块, 避免底图按块重复绘制
+     */
+    @WorkerThread
+    private Bitmap composeSinglePass(@Nullable Callback callback) {
+        Bitmap result = Bitmap.createBitmap(mBackground.getWidth(), mBackground.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        try {
+            Canvas canvas = new Canvas(result);
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+            canvas.drawBitmap(mBackground, 0, 0, paint);
+            for (int i = 0, size = mLayers.size(); i < size; i++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException();
+                }
+                Layer layer = mLayers.get(i);
+                canvas.drawBitmap(layer.bitmap, layer.matrix, paint);
+            }
+        } catch (RuntimeException e) {
+            result.recycle();
+            throw e;
+        }
+        postProgress(callback, 1, 1);
+        return result;
+    }
+
+    @WorkerThread
+    private void composeTiles(TileSink sink, @Nullable Callback callback) throws Exception {
+        int width = mBackground.getWidth();
+        int height = mBackground.getHeight();
+        int tileSize = mTileSize;
+        int cols = (width + tileSize - 1) / tileSize;
+        int rows = (height + tileSize - 1) / tileSize;
+
+        Bitmap tile = Bitmap.createBitmap(Math.min(tileSize, width), Math.min(tileSize, height),
+                Bitmap.Config.ARGB_8888);
+        try {
+            Canvas canvas = new Canvas(tile);
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+            sink.onStart(width, height);
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new CancellationException();
+                    }
+                    int left = col * tileSize;
+                    int top = row * tileSize;
+                    int right = Math.min(left + tileSize, width);
+                    int bottom = Math.min(top + tileSize, height);
+
+                    int saveCount = canvas.save();
+                    tile.eraseColor(0);
+                    canvas.clipRect(0, 0, right - left, bottom - top);
+                    canvas.translate(-left, -top);
+                    canvas.drawBitmap(mBackground, 0, 0, paint);
+                    for (int i = 0, size = mLayers.size(); i < size; i++) {
+                        Layer layer = mLayers.get(i);
+                        if (layer.bounds.intersects(left, top, right, bottom)) {
+                            canvas.drawBitmap(layer.bitmap, layer.matrix, paint);
+                        }
+                    }
+                    canvas.restoreToCount(saveCount);
+
+                    sink.onTile(tile, left, top, right - left, bottom - top);
+                    postProgress(callback, row * cols + col + 1, cols * rows);
+                }
+            }
+            sink.onFinish();
+        } finally {
+            tile.recycle();
+        }
+    }
+
+    private void postProgress(@Nullable final Callback callback, final int completedTiles,
+            final int totalTiles) {
+        if (callback == null) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onProgress(completedTiles, totalTiles);
+            }
+        });
+    }
+
+    private void releaseLayers() {
+        BitmapCache cache = BitmapCache.getInstance();
+        for (int i = 0, size = mLayers.size(); i < size; i++) {
+            Layer layer = mLayers.get(i);
+            if (layer.cacheKey != null) {
+                cache.release(layer.cacheKey);
+            }
+        }
+        mLayers.clear();
+    }
+}
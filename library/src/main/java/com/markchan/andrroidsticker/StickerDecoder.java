@@ -0,0 +1,255 @@
+package com.markchan.andrroidsticker;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import com.markchan.andrroidsticker.StickerAttacher.Component;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 贴纸图片异步解码.
+ *
+ * 先只读取图片尺寸, 按目标显示尺寸计算 inSampleSize 并用 density 缩放到目标尺寸,
+ * 解码在固定线程数的后台线程池中进行, 完成后在主线程回调.
+ * 解码结果放入 {@link BitmapCache} 共享, 回调得到的 Component 已钉住缓存中的图片.
+ * 图片以可变方式解码, 离开缓存后归还 {@link BitmapPool}, 下次解码时优先复用.
+ */
+public class StickerDecoder {
+
+    public interface Callback {
+
+        void onDecoded(Component component);
+
+        void onFailed(String path);
+    }
+
+    /**
+     * 图片数据来源, 先读尺寸再解码, 每次打开新的流
+     */
+    public interface Source {
+
+        InputStream open() throws IOException;
+    }
+
+    private static final int DECODE_THREAD_COUNT = 2;
+
+    private static final ThreadPoolExecutor DECODE_EXECUTOR = new ThreadPoolExecutor(
+            DECODE_THREAD_COUNT, DECODE_THREAD_COUNT, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "StickerDecoder #" + mCount.incrementAndGet());
+        }
+    });
+
+    static {
+        DECODE_EXECUTOR.allowCoreThreadTimeOut(true);
+        BitmapCache.getInstance().addOnEvictedListener(new BitmapCache.OnEvictedListener() {
+            @Override
+            public void onEvicted(String key, Bitmap bitmap) {
+                BitmapPool.getInstance().put(bitmap);
+            }
+        });
+    }
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * 异步解码, 结果不超过 reqWidth x reqHeight. 缓存命中时不再解码, 回调仍在下一帧执行
+     */
+    @MainThread
+    public Future<?> decode(final String path, final int reqWidth, final int reqHeight,
+            final Callback callback) {
+        final String key = BitmapCache.fileKey(path, reqWidth, reqHeight);
+        final Bitmap cached = BitmapCache.getInstance().acquire(key);
+        if (cached != null) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onDecoded(new Component(key, cached));
+                }
+            });
+            return null;
+        }
+
+        return DECODE_EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = decodeSampledBitmap(path, reqWidth, reqHeight);
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (bitmap == null) {
+                            callback.onFailed(path);
+                        } else {
+                            callback.onDecoded(new Component(key,
+                                    BitmapCache.getInstance().putAndAcquire(key, bitmap)));
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 同步解码资源图片(如删除、旋转控制点图标), 所有贴纸共享同一份
+     */
+    public static Component decodeResource(Resources res, @DrawableRes int resId) {
+        String key = BitmapCache.resourceKey(resId);
+        BitmapCache cache = BitmapCache.getInstance();
+        Bitmap bitmap = cache.acquire(key);
+        if (bitmap == null) {
+            bitmap = cache.putAndAcquire(key, BitmapFactory.decodeResource(res, resId));
+        }
+        return new Component(key, bitmap);
+    }
+
+    /**
+     * 同步解码, 只能在后台线程调用
+     */
+    @WorkerThread
+    @Nullable
+    public static Bitmap decodeSampledBitmap(final String path, int reqWidth, int reqHeight) {
+        return decodeSampledBitmap(new Source() {
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(path);
+            }
+        }, reqWidth, reqHeight);
+    }
+
+    /**
+     * 从任意来源同步解码(如未解压的素材包), 只能在后台线程调用
+     */
+    @WorkerThread
+    @Nullable
+    public static Bitmap decodeSampledBitmap(Source source, int reqWidth, int reqHeight) {
+        return decodeSampledBitmap(source, reqWidth, reqHeight, true);
+    }
+
+    /**
+     * 同上, reusePool 为 false 时不从 {@link BitmapPool} 借用图片. 解码结果不会归还图片池的调用方
+     * (如缩略图缓存)应传 false, 否则会耗尽贴纸解码复用的图片
+     */
+    @WorkerThread
+    @Nullable
+    public static Bitmap decodeSampledBitmap(Source source, int reqWidth, int reqHeight,
+            boolean reusePool) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(source, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                reqWidth, reqHeight);
+        // 采样后仍大于目标尺寸时借助 density 精确缩放
+        int sampledWidth = options.outWidth / options.inSampleSize;
+        int sampledHeight = options.outHeight / options.inSampleSize;
+        int targetWidth = fitWidth(sampledWidth, sampledHeight, reqWidth, reqHeight);
+        int targetHeight = sampledHeight;
+        if (targetWidth < sampledWidth) {
+            options.inScaled = true;
+            options.inDensity = sampledWidth;
+            options.inTargetDensity = targetWidth;
+            targetHeight = (int) (sampledHeight * targetWidth / (float) sampledWidth + 0.5F);
+        }
+
+        options.inMutable = true;
+        if (reusePool && BitmapPool.isSupported()) {
+            // 部分格式采样后的尺寸向上取整, 多留一行一列
+            options.inBitmap = BitmapPool.getInstance().get(targetWidth + 1, targetHeight + 1,
+                    Bitmap.Config.ARGB_8888);
+        }
+        Bitmap bitmap;
+        try {
+            bitmap = decodeStream(source, options);
+        } catch (IllegalArgumentException e) {
+            // 复用的图片不满足要求, 放弃复用重新解码
+            BitmapPool.getInstance().put(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = decodeStream(source, options);
+        }
+        if (bitmap == null && options.inBitmap != null) {
+            BitmapPool.getInstance().put(options.inBitmap);
+        }
+        if (bitmap != null) {
+            // 上面借用的 density 不代表真实屏幕密度, 避免绘制时被再次缩放
+            bitmap.setDensity(Bitmap.DENSITY_NONE);
+        }
+        return bitmap;
+    }
+
+    private static Bitmap decodeStream(Source source, BitmapFactory.Options options) {
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(source.open());
+            return BitmapFactory.decodeStream(in, null, options);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 计算不小于目标尺寸的最大 2 的幂采样率
+     */
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return inSampleSize;
+        }
+        while (width / (inSampleSize * 2) >= reqWidth
+                && height / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * 按比例缩放至目标尺寸以内时的宽度
+     */
+    static int fitWidth(int width, int height, int reqWidth, int reqHeight) {
+        if (reqWidth <= 0 || reqHeight <= 0 || (width <= reqWidth && height <= reqHeight)) {
+            return width;
+        }
+        float ratio = Math.min((float) reqWidth / width, (float) reqHeight / height);
+        return Math.max(1, Math.round(width * ratio));
+    }
+}
@@ -0,0 +1,200 @@
+package com.markchan.andrroidsticker;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.IntRange;
+import android.support.annotation.WorkerThread;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 合成结果导出.
+ *
+ * 在后台线程按指定格式和质量编码, 经缓冲写入同目录下的临时文件, 写完同步到磁盘后重命名为目标文件,
+ * 中途失败或进程被杀不会留下不完整的目标文件. 完成后在主线程回调写入字节数和耗时.
+ */
+public class StickerExporter {
+
+    public interface Callback {
+
+        void onExported(File file, long bytesWritten, long elapsedMillis);
+
+        void onFailed(Exception e);
+    }
+
+    /**
+     * 向输出流写入文件内容
+     */
+    interface Writer {
+
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ExecutorService EXPORT_EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "StickerExporter");
+                }
+            });
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Bitmap.CompressFormat mFormat;
+    private final int mQuality;
+
+    /**
+     * @param quality 0-100, PNG 忽略该参数
+     */
+    public StickerExporter(Bitmap.CompressFormat format,
+            @IntRange(from = 0, to = 100) int quality) {
+        mFormat = format;
+        mQuality = quality;
+    }
+
+    public Bitmap.CompressFormat getFormat() {
+        return mFormat;
+    }
+
+    public int getQuality() {
+        return mQuality;
+    }
+
+    /**
+     * 目标格式对应的文件扩展名
+     */
+    public String getExtension() {
+        switch (mFormat) {
+            case PNG:
+                return ".png";
+            case WEBP:
+                return ".webp";
+            default:
+                return ".jpg";
+        }
+    }
+
+    /**
+     * 异步导出, 导出期间不能修改或回收 bitmap
+     */
+    public Future<?> export(final Bitmap bitmap, final File file, final Callback callback) {
+        return EXPORT_EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                final long start = SystemClock.elapsedRealtime();
+                try {
+                    final long bytesWritten = export(bitmap, file);
+                    final long elapsedMillis = SystemClock.elapsedRealtime() - start;
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onExported(file, bytesWritten, elapsedMillis);
+                        }
+                    });
+                } catch (final Exception e) {
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onFailed(e);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * 同步导出, 返回写入的字节数
+     */
+    @WorkerThread
+    public long export(final Bitmap bitmap, File file) throws IOException {
+        return writeAtomically(file, new Writer() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                if (!bitmap.compress(mFormat, mQuality, out)) {
+                    throw new IOException("Failed to compress bitmap as " + mFormat);
+                }
+            }
+        });
+    }
+
+    /**
+     * 写入临时文件后重命名为目标文件, 返回写入的字节数
+     */
+    static long writeAtomically(File file, Writer writer) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File tempFile = AtomicFiles.getTempFile(file);
+        boolean success = false;
+        FileOutputStream fileOut = new FileOutputStream(tempFile);
+        try {
+            FileChannel channel = fileOut.getChannel();
+            CountingOutputStream out = new CountingOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            writer.writeTo(out);
+            out.flush();
+            channel.force(true);
+            fileOut.close();
+
+            AtomicFiles.commit(tempFile, file);
+            success = true;
+            return out.getCount();
+        } finally {
+            if (!success) {
+                try {
+                    fileOut.close();
+                } catch (IOException ignored) {
+                }
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long mCount;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            mCount += len;
+        }
+    }
+}
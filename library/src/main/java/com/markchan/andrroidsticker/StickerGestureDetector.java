@@ -0,0 +1,349 @@
+package com.markchan.andrroidsticker;
+
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import com.markchan.andrroidsticker.geometry.Geometry;
+
+/**
+ * 贴纸手势识别.
+ *
+ * 单指拖动; 双指时拖动、缩放和旋转合成一次变换: 每个事件只计算一次两指的中点、距离和角度,
+ * 与上一个事件比较后通过 {@link Sticker} 接口驱动贴纸, 单个贴纸和多贴纸容器共用. 手指按下或抬起时
+ * 重新记录基准, 手指交接时贴纸不会跳动. 只使用基本类型字段, 处理事件时不分配对象.
+ *
+ * 指定 {@link Callback} 时按帧合并: 一帧内的多个移动事件(包括历史采样)只累加变化量, 在
+ * {@link Choreographer} 的下一帧回调中一次性驱动贴纸并通知重绘, 矩阵计算和重绘次数以屏幕刷新率
+ * 为上限, 不随触摸采样率增加. 手指全部抬起时立即应用剩余的变化. API 16 以下每个事件立即应用.
+ */
+public final class StickerGestureDetector {
+
+    public interface Callback {
+
+        /**
+         * 一次合并后的变换已应用到贴纸, 在主线程回调
+         */
+        void onTransformApplied(Sticker sticker);
+    }
+
+    private static final int INVALID_POINTER_ID = -1;
+
+    @Nullable
+    private final Callback mCallback;
+    private final boolean mCoalescing;
+    @Nullable
+    private final Choreographer.FrameCallback mFrameCallback;
+    private boolean mFramePosted;
+
+    /** 等待下一帧应用的变化量 */
+    private Sticker mPendingSticker;
+    private float mPendingDx;
+    private float mPendingDy;
+    private float mPendingScale = 1;
+    private float mPendingFocusX;
+    private float mPendingFocusY;
+    private float mPendingDegrees;
+
+    /** 最多跟踪两根手指, 第一根抬起时第二根接替 */
+    private int mPointerId0 = INVALID_POINTER_ID;
+    private int mPointerId1 = INVALID_POINTER_ID;
+
+    private int mPointerCount;
+    private float mFocusX;
+    private float mFocusY;
+    private float mSpan;
+    private float mAngle;
+
+    /**
+     * 每个事件立即驱动贴纸
+     */
+    public StickerGestureDetector() {
+        this(null, false);
+    }
+
+    /**
+     * 按帧合并事件, 每帧应用一次变换后回调
+     */
+    public StickerGestureDetector(Callback callback) {
+        this(callback, Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN);
+    }
+
+    StickerGestureDetector(@Nullable Callback callback, boolean coalescing) {
+        mCallback = callback;
+        mCoalescing = coalescing;
+        mFrameCallback = coalescing && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                ? new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        mFramePosted = false;
+                        flush();
+                    }
+                } : null;
+    }
+
+    /**
+     * 移动事件是否推迟到下一帧应用
+     */
+    public boolean isCoalescing() {
+        return mCoalescing;
+    }
+
+    /**
+     * 处理触摸事件并驱动贴纸, 返回是否正在跟踪手势
+     */
+    public boolean onTouchEvent(MotionEvent event, Sticker sticker) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                mPointerId0 = event.getPointerId(0);
+                mPointerId1 = INVALID_POINTER_ID;
+                resetBaseline(event);
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (mPointerId0 == INVALID_POINTER_ID) {
+                    // 手势中途接管时, 已按下的另一根手指作为第一根
+                    mPointerId0 = event.getPointerId(event.getActionIndex() == 0 ? 1 : 0);
+                }
+                if (mPointerId1 == INVALID_POINTER_ID) {
+                    mPointerId1 = event.getPointerId(event.getActionIndex());
+                    resetBaseline(event);
+                }
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+                onPointerUp(event, event.getPointerId(event.getActionIndex()));
+                resetBaseline(event);
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (mPointerId0 == INVALID_POINTER_ID) {
+                    return false;
+                }
+                int index0 = event.findPointerIndex(mPointerId0);
+                int index1 = mPointerId1 != INVALID_POINTER_ID
+                        ? event.findPointerIndex(mPointerId1) : -1;
+                if (index0 < 0) {
+                    return false;
+                }
+                if (mCoalescing) {
+                    // 只累加变化量, 历史采样的计算量很小, 且能正确累计跨过 ±180 度的旋转
+                    for (int h = 0, size = event.getHistorySize(); h < size; h++) {
+                        if (index1 < 0) {
+                            move(1, event.getHistoricalX(index0, h),
+                                    event.getHistoricalY(index0, h), 0, 0, sticker);
+                        } else {
+                            move(2, event.getHistoricalX(index0, h),
+                                    event.getHistoricalY(index0, h),
+                                    event.getHistoricalX(index1, h),
+                                    event.getHistoricalY(index1, h), sticker);
+                        }
+                    }
+                }
+                if (index1 < 0) {
+                    move(1, event.getX(index0), event.getY(index0), 0, 0, sticker);
+                } else {
+                    move(2, event.getX(index0), event.getY(index0), event.getX(index1),
+                            event.getY(index1), sticker);
+                }
+                if (mCoalescing) {
+                    postFrame();
+                } else if (mCallback != null) {
+                    mCallback.onTransformApplied(sticker);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                flush();
+                mPointerId0 = INVALID_POINTER_ID;
+                mPointerId1 = INVALID_POINTER_ID;
+                mPointerCount = 0;
+                return false;
+            default:
+                break;
+        }
+        return mPointerId0 != INVALID_POINTER_ID;
+    }
+
+    /**
+     * 是否有两根手指在跟踪
+     */
+    public boolean isMultiTouch() {
+        return mPointerCount == 2;
+    }
+
+    /**
+     * 抬起的手指由其他仍按下且未被跟踪的手指接替
+     */
+    private void onPointerUp(MotionEvent event, int upId) {
+        if (upId == mPointerId0) {
+            mPointerId0 = mPointerId1;
+        } else if (upId != mPointerId1) {
+            return;
+        }
+        mPointerId1 = INVALID_POINTER_ID;
+        for (int i = 0, count = event.getPointerCount(); i < count; i++) {
+            int id = event.getPointerId(i);
+            if (id == upId || id == mPointerId0) {
+                continue;
+            }
+            if (mPointerId0 == INVALID_POINTER_ID) {
+                mPointerId0 = id;
+            } else {
+                mPointerId1 = id;
+                break;
+            }
+        }
+    }
+
+    private void resetBaseline(MotionEvent event) {
+        int index0 = mPointerId0 != INVALID_POINTER_ID ? event.findPointerIndex(mPointerId0) : -1;
+        int index1 = mPointerId1 != INVALID_POINTER_ID ? event.findPointerIndex(mPointerId1) : -1;
+        if (index0 < 0) {
+            mPointerCount = 0;
+        } else if (index1 < 0) {
+            reset(1, event.getX(index0), event.getY(index0), 0, 0);
+        } else {
+            reset(2, event.getX(index0), event.getY(index0), event.getX(index1),
+                    event.getY(index1));
+        }
+    }
+
+    /**
+     * 记录手势基准, 不驱动贴纸
+     */
+    void reset(int pointerCount, float x0, float y0, float x1, float y1) {
+        mPointerCount = pointerCount;
+        if (pointerCount == 1) {
+            mFocusX = x0;
+            mFocusY = y0;
+        } else {
+            mFocusX = (x0 + x1) / 2;
+            mFocusY = (y0 + y1) / 2;
+            mSpan = Geometry.distance(x0, y0, x1, y1);
+            mAngle = Geometry.degrees(x0, y0, x1, y1);
+        }
+    }
+
+    /**
+     * 与基准比较, 依次拖动到新的中点、以中点缩放、旋转, 之后以当前位置作为新基准
+     */
+    void move(int pointerCount, float x0, float y0, float x1, float y1, Sticker sticker) {
+        if (pointerCount != mPointerCount) {
+            // 手指数变化时只更新基准
+            reset(pointerCount, x0, y0, x1, y1);
+            return;
+        }
+        if (pointerCount == 1) {
+            float dx = x0 - mFocusX;
+            float dy = y0 - mFocusY;
+            if (dx != 0 || dy != 0) {
+                drag(sticker, dx, dy);
+            }
+            mFocusX = x0;
+            mFocusY = y0;
+            return;
+        }
+
+        float focusX = (x0 + x1) / 2;
+        float focusY = (y0 + y1) / 2;
+        float span = Geometry.distance(x0, y0, x1, y1);
+        float angle = Geometry.degrees(x0, y0, x1, y1);
+
+        float dx = focusX - mFocusX;
+        float dy = focusY - mFocusY;
+        if (dx != 0 || dy != 0) {
+            drag(sticker, dx, dy);
+        }
+        if (mSpan > 0 && span > 0 && span != mSpan) {
+            scale(sticker, span / mSpan, focusX, focusY);
+        }
+        // 跨过 ±180 度时取较小的转角
+        float degrees = Geometry.normalizeDegrees(angle - mAngle);
+        if (degrees != 0) {
+            rotate(sticker, degrees);
+        }
+
+        mFocusX = focusX;
+        mFocusY = focusY;
+        mSpan = span;
+        mAngle = angle;
+    }
+
+    /**
+     * 立即应用等待中的变化量并回调
+     */
+    public void flush() {
+        if (mFramePosted) {
+            mFramePosted = false;
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        }
+        Sticker sticker = mPendingSticker;
+        if (sticker == null) {
+            return;
+        }
+        mPendingSticker = null;
+        if (mPendingDx != 0 || mPendingDy != 0) {
+            sticker.drag(mPendingDx, mPendingDy);
+        }
+        if (mPendingScale != 1) {
+            sticker.scale(mPendingScale, mPendingFocusX, mPendingFocusY);
+        }
+        if (mPendingDegrees != 0) {
+            sticker.rotate(mPendingDegrees);
+        }
+        mPendingDx = 0;
+        mPendingDy = 0;
+        mPendingScale = 1;
+        mPendingDegrees = 0;
+        if (mCallback != null) {
+            mCallback.onTransformApplied(sticker);
+        }
+    }
+
+    private void postFrame() {
+        if (mPendingSticker == null || mFramePosted || mFrameCallback == null) {
+            return;
+        }
+        mFramePosted = true;
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    private void drag(Sticker sticker, float dx, float dy) {
+        if (!mCoalescing) {
+            sticker.drag(dx, dy);
+            return;
+        }
+        setPendingSticker(sticker);
+        mPendingDx += dx;
+        mPendingDy += dy;
+    }
+
+    /**
+     * 合并时缩放比相乘, 以最后一次的中点为缩放中心
+     */
+    private void scale(Sticker sticker, float scaleFactor, float focusX, float focusY) {
+        if (!mCoalescing) {
+            sticker.scale(scaleFactor, focusX, focusY);
+            return;
+        }
+        setPendingSticker(sticker);
+        mPendingScale *= scaleFactor;
+        mPendingFocusX = focusX;
+        mPendingFocusY = focusY;
+    }
+
+    private void rotate(Sticker sticker, float degrees) {
+        if (!mCoalescing) {
+            sticker.rotate(degrees);
+            return;
+        }
+        setPendingSticker(sticker);
+        mPendingDegrees += degrees;
+    }
+
+    private void setPendingSticker(Sticker sticker) {
+        if (mPendingSticker != sticker) {
+            // 目标贴纸变化时先应用上一个贴纸的变化
+            flush();
+            mPendingSticker = sticker;
+        }
+    }
+}
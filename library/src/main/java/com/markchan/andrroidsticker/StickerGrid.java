@@ -0,0 +1,245 @@
+package com.markchan.andrroidsticker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * 贴纸空间索引.
+ *
+ * 把视图划分为均匀网格, 每个贴纸按包围盒登记到覆盖的格子里, 格子内按 z-order 升序排列.
+ * 查询时只检查触摸点所在格子的候选贴纸, 从最上层开始逐个精确检测, 与贴纸总数无关.
+ * 超出视图范围的坐标归入边缘格子, 因此移出视图的贴纸同样可以被查询到.
+ */
+final class StickerGrid<T> {
+
+    interface HitTest<T> {
+
+        boolean isHit(T item, int x, int y);
+    }
+
+    private static final class Entry<T> {
+
+        final T item;
+        long z;
+
+        float left;
+        float top;
+        float right;
+        float bottom;
+
+        /** 覆盖的格子范围, 闭区间 */
+        int cellLeft;
+        int cellTop;
+        int cellRight;
+        int cellBottom;
+
+        Entry(T item) {
+            this.item = item;
+        }
+    }
+
+    private final int mCellSize;
+    private int mCols = 1;
+    private int mRows = 1;
+    private ArrayList<Entry<T>>[] mCells;
+
+    private final HashMap<T, Entry<T>> mEntries = new HashMap<>();
+
+    private long mNextZ;
+
+    StickerGrid(int cellSize) {
+        mCellSize = cellSize;
+        mCells = newCells(1);
+    }
+
+    /**
+     * 视图尺寸变化后重建网格
+     */
+    void resize(int width, int height) {
+        int cols = Math.max(1, (width + mCellSize - 1) / mCellSize);
+        int rows = Math.max(1, (height + mCellSize - 1) / mCellSize);
+        if (cols == mCols && rows == mRows) {
+            return;
+        }
+        mCols = cols;
+        mRows = rows;
+        mCells = newCells(cols * rows);
+        for (Entry<T> entry : mEntries.values()) {
+            computeCellRange(entry);
+            addToCells(entry);
+        }
+    }
+
+    /**
+     * 添加至最上层
+     */
+    void add(T item, float left, float top, float right, float bottom) {
+        if (mEntries.containsKey(item)) {
+            update(item, left, top, right, bottom);
+            return;
+        }
+        Entry<T> entry = new Entry<>(item);
+        entry.z = mNextZ++;
+        setBounds(entry, left, top, right, bottom);
+        computeCellRange(entry);
+        addToCells(entry);
+        mEntries.put(item, entry);
+    }
+
+    /**
+     * 贴纸包围盒变化, 只有覆盖的格子范围改变时才调整格子
+     */
+    void update(T item, float left, float top, float right, float bottom) {
+        Entry<T> entry = mEntries.get(item);
+        if (entry == null) {
+            return;
+        }
+        setBounds(entry, left, top, right, bottom);
+        int cellLeft = entry.cellLeft;
+        int cellTop = entry.cellTop;
+        int cellRight = entry.cellRight;
+        int cellBottom = entry.cellBottom;
+        computeCellRange(entry);
+        if (cellLeft == entry.cellLeft && cellTop == entry.cellTop
+                && cellRight == entry.cellRight && cellBottom == entry.cellBottom) {
+            return;
+        }
+        for (int row = cellTop; row <= cellBottom; row++) {
+            for (int col = cellLeft; col <= cellRight; col++) {
+                if (col < entry.cellLeft || col > entry.cellRight
+                        || row < entry.cellTop || row > entry.cellBottom) {
+                    removeFromCell(mCells[row * mCols + col], entry);
+                }
+            }
+        }
+        for (int row = entry.cellTop; row <= entry.cellBottom; row++) {
+            for (int col = entry.cellLeft; col <= entry.cellRight; col++) {
+                if (col < cellLeft || col > cellRight || row < cellTop || row > cellBottom) {
+                    insertIntoCell(mCells[row * mCols + col], entry);
+                }
+            }
+        }
+    }
+
+    void remove(T item) {
+        Entry<T> entry = mEntries.remove(item);
+        if (entry == null) {
+            return;
+        }
+        for (int row = entry.cellTop; row <= entry.cellBottom; row++) {
+            for (int col = entry.cellLeft; col <= entry.cellRight; col++) {
+                removeFromCell(mCells[row * mCols + col], entry);
+            }
+        }
+    }
+
+    void clear() {
+        mEntries.clear();
+        for (ArrayList<Entry<T>> cell : mCells) {
+            cell.clear();
+        }
+    }
+
+    int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * 查找触摸点下最上层的贴纸
+     */
+    T findTop(int x, int y, HitTest<T> hitTest) {
+        ArrayList<Entry<T>> cell = mCells[cellRow(y) * mCols + cellCol(x)];
+        for (int i = cell.size() - 1; i >= 0; i--) {
+            Entry<T> entry = cell.get(i);
+            if (x >= entry.left && x <= entry.right && y >= entry.top && y <= entry.bottom
+                    && hitTest.isHit(entry.item, x, y)) {
+                return entry.item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 查询点所在格子中的候选贴纸数量, 即 findTop 最多需要检查的贴纸数
+     */
+    int candidateCount(int x, int y) {
+        return mCells[cellRow(y) * mCols + cellCol(x)].size();
+    }
+
+    private void setBounds(Entry<T> entry, float left, float top, float right, float bottom) {
+        entry.left = left;
+        entry.top = top;
+        entry.right = right;
+        entry.bottom = bottom;
+    }
+
+    private void computeCellRange(Entry<T> entry) {
+        entry.cellLeft = cellCol(entry.left);
+        entry.cellTop = cellRow(entry.top);
+        entry.cellRight = cellCol(entry.right);
+        entry.cellBottom = cellRow(entry.bottom);
+    }
+
+    private int cellCol(float x) {
+        return clamp((int) Math.floor(x / mCellSize), mCols);
+    }
+
+    private int cellRow(float y) {
+        return clamp((int) Math.floor(y / mCellSize), mRows);
+    }
+
+    private static int clamp(int index, int count) {
+        return index < 0 ? 0 : index >= count ? count - 1 : index;
+    }
+
+    private void addToCells(Entry<T> entry) {
+        for (int row = entry.cellTop; row <= entry.cellBottom; row++) {
+            for (int col = entry.cellLeft; col <= entry.cellRight; col++) {
+                insertIntoCell(mCells[row * mCols + col], entry);
+            }
+        }
+    }
+
+    /**
+     * 按 z-order 二分插入, 新添加的贴纸总是追加在末尾
+     */
+    private static <T> void insertIntoCell(ArrayList<Entry<T>> cell, Entry<T> entry) {
+        int low = 0;
+        int high = cell.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cell.get(mid).z < entry.z) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        cell.add(low, entry);
+    }
+
+    private static <T> void removeFromCell(ArrayList<Entry<T>> cell, Entry<T> entry) {
+        int low = 0;
+        int high = cell.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long z = cell.get(mid).z;
+            if (z < entry.z) {
+                low = mid + 1;
+            } else if (z > entry.z) {
+                high = mid - 1;
+            } else {
+                cell.remove(mid);
+                return;
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> ArrayList<Entry<T>>[] newCells(int count) {
+        ArrayList<Entry<T>>[] cells = new ArrayList[count];
+        for (int i = 0; i < count; i++) {
+            cells[i] = new ArrayList<>();
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,92 @@
+package com.markchan.andrroidsticker;
+
+import com.markchan.andrroidsticker.geometry.Affine;
+import com.markchan.andrroidsticker.geometry.Geometry;
+
+/**
+ * 贴纸命中检测.
+ *
+ * 缓存贴纸变换的逆变换, 只有变换变化后才重新求逆; 检测过程只做浮点运算, 不分配对象.
+ * 拖动中的贴纸每次变换后通常只检测一次, 变换变化后的第一次检测直接用映射后的顶点做多边形检测,
+ * 同一变换再次检测时才求逆.
+ * 变换数组布局与 {@link Affine} 一致, 也可以直接传入 {@link android.graphics.Matrix#getValues(float[])}
+ * 的结果.
+ */
+final class StickerHitTester {
+
+    static final int CTR_NONE = -1;
+
+    /** 逆变换: scaleX, skewX, transX, skewY, scaleY, transY */
+    private final float[] mInverse = new float[Affine.SIZE];
+
+    private boolean mInverseValid;
+    private boolean mDirty = true;
+    private boolean mTestedSinceChange;
+
+    /**
+     * 矩阵发生变化, 下次检测前需要重新求逆
+     */
+    void invalidate() {
+        mDirty = true;
+        mTestedSinceChange = false;
+    }
+
+    boolean isDirty() {
+        return mDirty;
+    }
+
+    /**
+     * 根据变换计算逆变换, 数组布局与 {@link Affine} 一致
+     */
+    void setMatrixValues(float[] values) {
+        mDirty = false;
+        mInverseValid = Affine.invert(values, mInverse);
+    }
+
+    /**
+     * 判断触摸点是否落在贴纸上, destPointArr 是按 values 映射后的顶点, 前四个点为贴纸四角
+     */
+    boolean isOnSticker(float[] values, float[] destPointArr, float x, float y, int width,
+            int height) {
+        if (mDirty) {
+            if (!mTestedSinceChange) {
+                mTestedSinceChange = true;
+                return Geometry.polygonContains(destPointArr, 4, x, y);
+            }
+            setMatrixValues(values);
+        }
+        return isOnSticker(x, y, width, height);
+    }
+
+    /**
+     * 判断触摸点映射回贴纸坐标系后是否落在贴纸范围内
+     */
+    boolean isOnSticker(float x, float y, int width, int height) {
+        if (!mInverseValid) {
+            return false;
+        }
+        float srcX = Affine.mapX(mInverse, x, y);
+        float srcY = Affine.mapY(mInverse, x, y);
+        return srcX > 0 && srcX < width && srcY > 0 && srcY < height;
+    }
+
+    /**
+     * 查找触摸点附近的控制点, 返回控制点序号
+     */
+    static int getCurrCtr(float[] destPointArr, int x, int y, int ctrWidth, int ctrHeight) {
+        int left = x - ctrWidth / 2;
+        int top = y - ctrHeight;
+        int right = x + ctrWidth / 2;
+        int bottom = y + ctrHeight;
+        int index = 0;
+        for (int i = 0; i < destPointArr.length; i += 2) {
+            int px = (int) destPointArr[i];
+            int py = (int) destPointArr[i + 1];
+            if (px >= left && px < right && py >= top && py < bottom) {
+                return index;
+            }
+            ++index;
+        }
+        return CTR_NONE;
+    }
+}
@@ -1,17 +1,49 @@
 package com.markchan.andrroidsticker;
 
 import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.RectF;
 import android.os.Build.VERSION_CODES;
 import android.support.annotation.Nullable;
 import android.support.annotation.RequiresApi;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
 import android.view.View;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Created by Mark on 2017/6/29.
+ *
+ * 贴纸容器, 所有贴纸按添加顺序(z-order)保存在同一个列表中并在一次 onDraw 中绘制,
+ * 触摸事件只分发给最上层被命中的贴纸, 命中查询通过网格索引完成.
  */
 public class StickerView extends View implements Sticker {
 
+    /** 索引网格边长(px) */
+    private static final int GRID_CELL_SIZE = 96;
+
+    private static final StickerGrid.HitTest<StickerAttacher> STICKER_HIT_TEST =
+            new StickerGrid.HitTest<StickerAttacher>() {
+                @Override
+                public boolean isHit(StickerAttacher item, int x, int y) {
+                    return item.isHit(x, y);
+                }
+            };
+
+    private final List<StickerAttacher> mStickers = new ArrayList<>();
+
+    private final StickerGrid<StickerAttacher> mStickerGrid =
+            new StickerGrid<>(GRID_CELL_SIZE);
+
+    private final RectF mTempBounds = new RectF();
+
+    /** 当前选中的贴纸 */
+    private StickerAttacher mCurrSticker;
+    /** 当前手势的目标贴纸 */
+    private StickerAttacher mTouchSticker;
+
     public StickerView(Context context) {
         this(context, null);
     }
@@ -38,23 +70,166 @@ public class StickerView extends View implements Sticker {
 
     }
 
+    /**
+     * 添加贴纸至最上层并选中
+     */
+    public void addSticker(StickerAttacher sticker) {
+        if (mCurrSticker != null) {
+            mCurrSticker.setSelected(false);
+            updateStickerBounds(mCurrSticker);
+            mCurrSticker.invalidate(this);
+        }
+        sticker.setSelected(true);
+        // 贴纸中心点不能拖出容器
+        sticker.setMovementBounds(0, 0, getWidth(), getHeight());
+        mStickers.add(sticker);
+        sticker.getBounds(mTempBounds);
+        mStickerGrid.add(sticker, mTempBounds.left, mTempBounds.top, mTempBounds.right,
+                mTempBounds.bottom);
+        mCurrSticker = sticker;
+        sticker.invalidate(this);
+    }
+
+    public void removeSticker(StickerAttacher sticker) {
+        if (!mStickers.remove(sticker)) {
+            return;
+        }
+        mStickerGrid.remove(sticker);
+        if (mCurrSticker == sticker) {
+            mCurrSticker = null;
+        }
+        if (mTouchSticker == sticker) {
+            mTouchSticker = null;
+        }
+        if (sticker.isActive()) {
+            sticker.delete();
+        }
+        sticker.invalidate(this);
+    }
+
+    /**
+     * 贴纸在容器外部被修改(如替换图片)后, 通知容器更新索引并重绘
+     */
+    public void notifyStickerChanged(StickerAttacher sticker) {
+        if (!mStickers.contains(sticker)) {
+            return;
+        }
+        updateStickerBounds(sticker);
+        sticker.invalidate(this);
+    }
+
+    public List<StickerAttacher> getStickers() {
+        return Collections.unmodifiableList(mStickers);
+    }
+
+    @Nullable
+    public StickerAttacher getCurrSticker() {
+        return mCurrSticker;
+    }
+
+    /**
+     * 贴纸变换或选中状态变化后同步索引
+     */
+    private void updateStickerBounds(StickerAttacher sticker) {
+        sticker.getBounds(mTempBounds);
+        mStickerGrid.update(sticker, mTempBounds.left, mTempBounds.top, mTempBounds.right,
+                mTempBounds.bottom);
+    }
+
     @Override
-    public void drag(float dx, float dy) {
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mStickerGrid.resize(w, h);
+        for (int i = 0, size = mStickers.size(); i < size; i++) {
+            StickerAttacher sticker = mStickers.get(i);
+            sticker.setMovementBounds(0, 0, w, h);
+            updateStickerBounds(sticker);
+        }
+    }
 
+    @Override
+    protected void onDraw(Canvas canvas) {
+        for (int i = 0, size = mStickers.size(); i < size; i++) {
+            StickerAttacher sticker = mStickers.get(i);
+            sticker.getBounds(mTempBounds);
+            // 跳过与重绘区域不相交的贴纸
+            if (!canvas.quickReject(mTempBounds, Canvas.EdgeType.AA)) {
+                sticker.draw(canvas);
+            }
+        }
     }
 
     @Override
-    public void scale(float scaleFactor, float focusX, float focusY) {
+    public boolean onTouchEvent(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            mTouchSticker = findTopSticker((int) event.getX(), (int) event.getY());
+            if (mTouchSticker != mCurrSticker) {
+                if (mCurrSticker != null) {
+                    mCurrSticker.setSelected(false);
+                    updateStickerBounds(mCurrSticker);
+                    mCurrSticker.invalidate(this);
+                }
+                mCurrSticker = mTouchSticker;
+            }
+        }
+        if (mTouchSticker == null) {
+            return false;
+        }
+
+        StickerAttacher sticker = mTouchSticker;
+        boolean handled = sticker.onTouch(this, event);
+        if (!sticker.isActive()) {
+            removeSticker(sticker);
+            return handled;
+        }
+        updateStickerBounds(sticker);
+        if (event.getActionMasked() == MotionEvent.ACTION_UP
+                || event.getActionMasked() == MotionEvent.ACTION_CANCEL) {
+            mTouchSticker = null;
+        }
+        return handled;
+    }
 
+    /**
+     * 从上往下查找触摸点命中的第一个贴纸
+     */
+    @Nullable
+    private StickerAttacher findTopSticker(int x, int y) {
+        return mStickerGrid.findTop(x, y, STICKER_HIT_TEST);
     }
 
     @Override
-    public void rotate(float degrees) {
+    public void drag(float dx, float dy) {
+        if (mCurrSticker != null) {
+            mCurrSticker.drag(dx, dy);
+            updateStickerBounds(mCurrSticker);
+            mCurrSticker.invalidate(this);
+        }
+    }
 
+    @Override
+    public void scale(float scaleFactor, float focusX, float focusY) {
+        if (mCurrSticker != null) {
+            mCurrSticker.scale(scaleFactor, focusX, focusY);
+            updateStickerBounds(mCurrSticker);
+            mCurrSticker.invalidate(this);
+        }
     }
 
     @Override
-    public void delete() {
+    public void rotate(float degrees) {
+        if (mCurrSticker != null) {
+            mCurrSticker.rotate(degrees);
+            updateStickerBounds(mCurrSticker);
+            mCurrSticker.invalidate(this);
+        }
+    }
 
+    @Override
+    public void delete() {
+        if (mCurrSticker != null) {
+            mCurrSticker.delete();
+            removeSticker(mCurrSticker);
+        }
     }
 }
@@ -0,0 +1,22 @@
+package com.markchan.andrroidsticker;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * 图片池复用条件单元测试.
+ */
+public class BitmapPoolTest {
+
+    @Test
+    public void canReuse() throws Exception {
+        assertTrue(BitmapPool.canReuse(400, 400));
+        assertTrue(BitmapPool.canReuse(1600, 400));
+        // 太小放不下
+        assertFalse(BitmapPool.canReuse(399, 400));
+        // 太大会让小贴纸占用大图片
+        assertFalse(BitmapPool.canReuse(1601, 400));
+    }
+}
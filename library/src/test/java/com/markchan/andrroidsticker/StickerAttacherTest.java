@@ -0,0 +1,56 @@
+package com.markchan.andrroidsticker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.markchan.andrroidsticker.StickerAttacher.Component;
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+/**
+ * 贴纸命中检测单元测试, 经过 StickerAttacher 的完整检测路径, 保证手势过程中不产生垃圾对象.
+ *
+ * 只用到变换和命中检测, 不涉及绘制, Android 类在 JVM 测试中返回默认值即可.
+ */
+public class StickerAttacherTest {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 100;
+    private static final int ICON_SIZE = 40;
+
+    @Test
+    public void isHit_doesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        StickerAttacher attacher = new StickerAttacher(null, new Component(null, WIDTH, HEIGHT),
+                new Component(null, ICON_SIZE, ICON_SIZE),
+                new Component(null, ICON_SIZE, ICON_SIZE));
+
+        // 预热, 让 JIT 完成编译且计数接口自身完成初始化
+        int hits = simulateGesture(attacher);
+        threadMXBean.getThreadAllocatedBytes(threadId);
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        hits += simulateGesture(attacher);
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        assertTrue(hits > 0);
+        assertEquals(0, after - before);
+    }
+
+    /**
+     * 模拟单指旋转: 每个事件旋转一次, 再像按下和移动时一样检测贴纸和控制点
+     */
+    private static int simulateGesture(StickerAttacher attacher) {
+        int hits = 0;
+        for (int i = 0; i < 100000; i++) {
+            attacher.rotate(1);
+            if (attacher.isHit(i % WIDTH, i % (HEIGHT * 2) - HEIGHT / 2)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
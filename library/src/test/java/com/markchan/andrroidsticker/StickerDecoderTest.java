@@ -0,0 +1,27 @@
+package com.markchan.andrroidsticker;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * 采样率与目标尺寸计算单元测试.
+ */
+public class StickerDecoderTest {
+
+    @Test
+    public void calculateInSampleSize() throws Exception {
+        assertEquals(1, StickerDecoder.calculateInSampleSize(400, 300, 540, 960));
+        assertEquals(1, StickerDecoder.calculateInSampleSize(1000, 1000, 540, 960));
+        assertEquals(2, StickerDecoder.calculateInSampleSize(2000, 2000, 540, 960));
+        assertEquals(4, StickerDecoder.calculateInSampleSize(4000, 4000, 540, 960));
+        assertEquals(1, StickerDecoder.calculateInSampleSize(4000, 4000, 0, 0));
+    }
+
+    @Test
+    public void fitWidth() throws Exception {
+        assertEquals(400, StickerDecoder.fitWidth(400, 300, 540, 960));
+        assertEquals(540, StickerDecoder.fitWidth(1000, 1000, 540, 960));
+        assertEquals(480, StickerDecoder.fitWidth(1000, 2000, 540, 960));
+    }
+}
@@ -0,0 +1,131 @@
+package com.markchan.andrroidsticker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 原子写入单元测试.
+ */
+public class StickerExporterTest {
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws Exception {
+        mDir = File.createTempFile("exporter", "");
+        mDir.delete();
+        mDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void writeAtomically_writesAndCountsBytes() throws Exception {
+        File file = new File(mDir, "out.jpg");
+        final byte[] data = new byte[200 * 1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        long count = StickerExporter.writeAtomically(file, new StickerExporter.Writer() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(data, 0, 1000);
+                out.write(data[1000]);
+                out.write(data, 1001, data.length - 1001);
+            }
+        });
+
+        assertEquals(data.length, count);
+        assertArrayEquals(data, readFully(file));
+        assertFalse(new File(mDir, "out.jpg.tmp").exists());
+    }
+
+    @Test
+    public void writeAtomically_replacesExistingFile() throws Exception {
+        File file = new File(mDir, "out.png");
+        writeBytes(file, new byte[]{1, 2, 3});
+        writeBytes(file, new byte[]{4, 5});
+
+        assertArrayEquals(new byte[]{4, 5}, readFully(file));
+    }
+
+    @Test
+    public void writeAtomically_failureKeepsExistingFile() throws Exception {
+        File file = new File(mDir, "out.webp");
+        writeBytes(file, new byte[]{1, 2, 3});
+
+        try {
+            StickerExporter.writeAtomically(file, new StickerExporter.Writer() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    out.write(new byte[]{9, 9});
+                    throw new IOException("encoder failed");
+                }
+            });
+            fail();
+        } catch (IOException expected) {
+        }
+
+        assertArrayEquals(new byte[]{1, 2, 3}, readFully(file));
+        assertFalse(new File(mDir, "out.webp.tmp").exists());
+    }
+
+    @Test
+    public void writeAtomically_renameFailureKeepsTarget() throws Exception {
+        // 非空目录不能被文件覆盖, 重命名失败时不能删除目标
+        File target = new File(mDir, "out.png");
+        File child = new File(target, "child");
+        target.mkdirs();
+        writeBytes(child, new byte[]{1});
+
+        try {
+            writeBytes(target, new byte[]{4, 5});
+            fail();
+        } catch (IOException expected) {
+        }
+
+        assertArrayEquals(new byte[]{1}, readFully(child));
+        assertFalse(new File(mDir, "out.png.tmp").exists());
+        child.delete();
+    }
+
+    private static void writeBytes(File file, final byte[] data) throws IOException {
+        StickerExporter.writeAtomically(file, new StickerExporter.Writer() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(data);
+            }
+        });
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+}
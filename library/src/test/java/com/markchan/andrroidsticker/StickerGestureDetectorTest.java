@@ -0,0 +1,179 @@
+package com.markchan.andrroidsticker;
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Canvas;
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+/**
+ * 手势识别单元测试.
+ */
+public class StickerGestureDetectorTest {
+
+    private static final float DELTA = 1e-3F;
+
+    @Test
+    public void move_singlePointerDrags() throws Exception {
+        RecordingSticker sticker = new RecordingSticker();
+        StickerGestureDetector detector = new StickerGestureDetector();
+        detector.reset(1, 10, 20, 0, 0);
+
+        detector.move(1, 15, 18, 0, 0, sticker);
+        detector.move(1, 20, 30, 0, 0, sticker);
+
+        assertEquals(10, sticker.dx, DELTA);
+        assertEquals(10, sticker.dy, DELTA);
+        assertEquals(1, sticker.scale, DELTA);
+        assertEquals(0, sticker.degrees, DELTA);
+    }
+
+    @Test
+    public void move_twoPointersDragScaleAndRotateTogether() throws Exception {
+        RecordingSticker sticker = new RecordingSticker();
+        StickerGestureDetector detector = new StickerGestureDetector();
+        // 两指水平相距 100, 中点 (100, 100)
+        detector.reset(2, 50, 100, 150, 100);
+
+        // 中点移到 (110, 120), 距离变为 200, 连线顺时针转 90 度
+        detector.move(2, 110, 20, 110, 220, sticker);
+
+        assertEquals(10, sticker.dx, DELTA);
+        assertEquals(20, sticker.dy, DELTA);
+        assertEquals(2, sticker.scale, DELTA);
+        assertEquals(110, sticker.focusX, DELTA);
+        assertEquals(120, sticker.focusY, DELTA);
+        assertEquals(90, sticker.degrees, DELTA);
+    }
+
+    @Test
+    public void move_rotationTakesShortestTurnAcross180() throws Exception {
+        RecordingSticker sticker = new RecordingSticker();
+        StickerGestureDetector detector = new StickerGestureDetector();
+        // 连线角度约 179 度, 转到约 -179 度
+        detector.reset(2, 100, 0, 0, 1.745F);
+        detector.move(2, 100, 0, 0, -1.745F, sticker);
+
+        assertEquals(2, sticker.degrees, 0.01F);
+    }
+
+    @Test
+    public void move_pointerCountChangeOnlyResetsBaseline() throws Exception {
+        RecordingSticker sticker = new RecordingSticker();
+        StickerGestureDetector detector = new StickerGestureDetector();
+        detector.reset(2, 0, 0, 100, 0);
+
+        // 一根手指抬起后剩下的手指接替, 贴纸不跳到它的位置
+        detector.move(1, 100, 0, 0, 0, sticker);
+        assertEquals(0, sticker.dx, DELTA);
+        detector.move(1, 105, 0, 0, 0, sticker);
+
+        assertEquals(5, sticker.dx, DELTA);
+        assertEquals(1, sticker.scale, DELTA);
+    }
+
+    @Test
+    public void move_coalescedUntilFlush() throws Exception {
+        final RecordingSticker sticker = new RecordingSticker();
+        final int[] applied = new int[1];
+        StickerGestureDetector detector = new StickerGestureDetector(
+                new StickerGestureDetector.Callback() {
+                    @Override
+                    public void onTransformApplied(Sticker s) {
+                        assertEquals(sticker, s);
+                        applied[0]++;
+                    }
+                }, true);
+        detector.reset(2, 0, 0, 100, 0);
+
+        // 一帧内的三个采样
+        detector.move(2, 0, 10, 200, 10, sticker);
+        detector.move(2, 10, 10, 210, 10, sticker);
+        detector.move(2, 10, 10, 10, 210, sticker);
+        assertEquals(0, sticker.dx, DELTA);
+        assertEquals(0, applied[0]);
+
+        detector.flush();
+        assertEquals(1, applied[0]);
+        assertEquals(-40, sticker.dx, DELTA);
+        assertEquals(110, sticker.dy, DELTA);
+        // 缩放发生在第一个采样, 以当时的中点为中心
+        assertEquals(2, sticker.scale, DELTA);
+        assertEquals(100, sticker.focusX, DELTA);
+        assertEquals(10, sticker.focusY, DELTA);
+        assertEquals(90, sticker.degrees, DELTA);
+
+        // 没有新的变化时不再回调
+        detector.flush();
+        assertEquals(1, applied[0]);
+    }
+
+    @Test
+    public void move_doesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        RecordingSticker sticker = new RecordingSticker();
+        StickerGestureDetector detector = new StickerGestureDetector();
+
+        // 预热, 让 JIT 完成编译且计数接口自身完成初始化
+        for (int i = 0; i < 5; i++) {
+            simulatePinch(detector, sticker);
+        }
+        threadMXBean.getThreadAllocatedBytes(threadId);
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        simulatePinch(detector, sticker);
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        assertEquals(0, after - before);
+    }
+
+    private static void simulatePinch(StickerGestureDetector detector, Sticker sticker) {
+        detector.reset(2, 100, 100, 200, 100);
+        for (int i = 0; i < 100000; i++) {
+            float t = i % 100;
+            detector.move(2, 100 - t, 100 + t / 2, 200 + t, 100 - t / 3, sticker);
+        }
+    }
+
+    /**
+     * 累计收到的变换
+     */
+    private static final class RecordingSticker implements Sticker {
+
+        float dx;
+        float dy;
+        float scale = 1;
+        float focusX;
+        float focusY;
+        float degrees;
+
+        @Override
+        public void draw(Canvas canvas) {
+        }
+
+        @Override
+        public void drag(float dx, float dy) {
+            this.dx += dx;
+            this.dy += dy;
+        }
+
+        @Override
+        public void scale(float scaleFactor, float focusX, float focusY) {
+            scale *= scaleFactor;
+            this.focusX = focusX;
+            this.focusY = focusY;
+        }
+
+        @Override
+        public void rotate(float degrees) {
+            this.degrees += degrees;
+        }
+
+        @Override
+        public void delete() {
+        }
+    }
+}
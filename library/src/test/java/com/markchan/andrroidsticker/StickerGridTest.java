@@ -0,0 +1,139 @@
+package com.markchan.andrroidsticker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 空间索引单元测试.
+ */
+public class StickerGridTest {
+
+    private static final StickerGrid.HitTest<String> BOUNDS_HIT_TEST =
+            new StickerGrid.HitTest<String>() {
+                @Override
+                public boolean isHit(String item, int x, int y) {
+                    return true;
+                }
+            };
+
+    private StickerGrid<String> mGrid;
+
+    @Before
+    public void setUp() throws Exception {
+        mGrid = new StickerGrid<>(50);
+        mGrid.resize(500, 500);
+    }
+
+    @Test
+    public void findTop_returnsLastAdded() throws Exception {
+        mGrid.add("bottom", 0, 0, 200, 200);
+        mGrid.add("top", 100, 100, 300, 300);
+
+        assertEquals("top", mGrid.findTop(150, 150, BOUNDS_HIT_TEST));
+        assertEquals("bottom", mGrid.findTop(50, 50, BOUNDS_HIT_TEST));
+        assertEquals("top", mGrid.findTop(250, 250, BOUNDS_HIT_TEST));
+        assertNull(mGrid.findTop(400, 400, BOUNDS_HIT_TEST));
+    }
+
+    @Test
+    public void findTop_skipsItemsFailingHitTest() throws Exception {
+        mGrid.add("bottom", 0, 0, 200, 200);
+        mGrid.add("top", 0, 0, 200, 200);
+
+        String result = mGrid.findTop(100, 100, new StickerGrid.HitTest<String>() {
+            @Override
+            public boolean isHit(String item, int x, int y) {
+                return !"top".equals(item);
+            }
+        });
+        assertEquals("bottom", result);
+    }
+
+    @Test
+    public void update_movesItemKeepingZOrder() throws Exception {
+        mGrid.add("bottom", 0, 0, 100, 100);
+        mGrid.add("top", 300, 300, 400, 400);
+
+        mGrid.update("top", 0, 0, 100, 100);
+        assertEquals("top", mGrid.findTop(50, 50, BOUNDS_HIT_TEST));
+        assertNull(mGrid.findTop(350, 350, BOUNDS_HIT_TEST));
+
+        mGrid.update("top", 300, 300, 400, 400);
+        assertEquals("bottom", mGrid.findTop(50, 50, BOUNDS_HIT_TEST));
+        assertEquals("top", mGrid.findTop(350, 350, BOUNDS_HIT_TEST));
+    }
+
+    @Test
+    public void remove() throws Exception {
+        mGrid.add("bottom", 0, 0, 200, 200);
+        mGrid.add("top", 0, 0, 200, 200);
+
+        mGrid.remove("top");
+        assertEquals(1, mGrid.size());
+        assertEquals("bottom", mGrid.findTop(100, 100, BOUNDS_HIT_TEST));
+    }
+
+    @Test
+    public void outOfView_clampedToEdgeCells() throws Exception {
+        mGrid.add("outside", -300, 450, -100, 900);
+
+        assertEquals("outside", mGrid.findTop(-200, 800, BOUNDS_HIT_TEST));
+        assertNull(mGrid.findTop(10, 480, BOUNDS_HIT_TEST));
+    }
+
+    @Test
+    public void resize_keepsItems() throws Exception {
+        mGrid.add("bottom", 0, 0, 200, 200);
+        mGrid.add("top", 100, 100, 300, 300);
+
+        mGrid.resize(1000, 2000);
+        assertEquals("top", mGrid.findTop(150, 150, BOUNDS_HIT_TEST));
+        assertEquals("bottom", mGrid.findTop(50, 50, BOUNDS_HIT_TEST));
+    }
+
+    @Test
+    public void candidateCount_independentOfStickerCount() throws Exception {
+        // 画布面积随贴纸数量等比增长, 贴纸密度不变时每次查询检查的候选数不应随总数增长
+        double[] averages = new double[3];
+        int[] stickerCounts = {10, 100, 1000};
+        for (int i = 0; i < stickerCounts.length; i++) {
+            averages[i] = averageCandidates(stickerCounts[i]);
+        }
+
+        for (double average : averages) {
+            assertTrue("average candidates " + average, average < 8);
+        }
+        assertTrue(averages[2] < averages[0] * 2);
+    }
+
+    /**
+     * 约为 1080x1920 的画布放 100 个边长 160 的贴纸, 随机旋转, 返回随机查询点的平均候选数
+     */
+    private static double averageCandidates(int stickerCount) {
+        Random random = new Random(stickerCount);
+        int viewSize = (int) Math.sqrt(stickerCount * 1080.0 * 1920 / 100);
+        StickerGrid<Object> grid = new StickerGrid<>(96);
+        grid.resize(viewSize, viewSize);
+        for (int i = 0; i < stickerCount; i++) {
+            double radians = random.nextDouble() * 2 * Math.PI;
+            float extent = 80 * (float) (Math.abs(Math.cos(radians))
+                    + Math.abs(Math.sin(radians)));
+            float centerX = random.nextInt(viewSize);
+            float centerY = random.nextInt(viewSize);
+            grid.add(new Object(), centerX - extent, centerY - extent, centerX + extent,
+                    centerY + extent);
+        }
+
+        long candidates = 0;
+        int queryCount = 10000;
+        for (int i = 0; i < queryCount; i++) {
+            candidates += grid.candidateCount(random.nextInt(viewSize), random.nextInt(viewSize));
+        }
+        return (double) candidates / queryCount;
+    }
+}
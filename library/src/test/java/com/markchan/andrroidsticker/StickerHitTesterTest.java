@@ -0,0 +1,148 @@
+package com.markchan.andrroidsticker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+/**
+ * 命中检测单元测试, 包含分配计数以保证手势过程中不产生垃圾对象.
+ */
+public class StickerHitTesterTest {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 100;
+
+    @Test
+    public void isOnSticker_translated() throws Exception {
+        StickerHitTester hitTester = new StickerHitTester();
+        hitTester.setMatrixValues(new float[]{1, 0, 50, 0, 1, 20, 0, 0, 1});
+
+        assertTrue(hitTester.isOnSticker(60, 30, WIDTH, HEIGHT));
+        assertTrue(hitTester.isOnSticker(249, 119, WIDTH, HEIGHT));
+        assertFalse(hitTester.isOnSticker(40, 30, WIDTH, HEIGHT));
+        assertFalse(hitTester.isOnSticker(260, 30, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void isOnSticker_rotatedAndScaled() throws Exception {
+        // 放大两倍后旋转 90 度, 贴纸落在 x: [-200, 0], y: [0, 400]
+        StickerHitTester hitTester = new StickerHitTester();
+        hitTester.setMatrixValues(new float[]{0, -2, 0, 2, 0, 0, 0, 0, 1});
+
+        assertTrue(hitTester.isOnSticker(-100, 300, WIDTH, HEIGHT));
+        assertFalse(hitTester.isOnSticker(100, 300, WIDTH, HEIGHT));
+        assertFalse(hitTester.isOnSticker(-100, 420, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void isOnSticker_singularMatrix() throws Exception {
+        StickerHitTester hitTester = new StickerHitTester();
+        hitTester.setMatrixValues(new float[]{0, 0, 0, 0, 0, 0, 0, 0, 1});
+
+        assertFalse(hitTester.isOnSticker(0, 0, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void invalidate_marksDirtyUntilRecomputed() throws Exception {
+        StickerHitTester hitTester = new StickerHitTester();
+        assertTrue(hitTester.isDirty());
+        hitTester.setMatrixValues(new float[]{1, 0, 0, 0, 1, 0, 0, 0, 1});
+        assertFalse(hitTester.isDirty());
+        hitTester.invalidate();
+        assertTrue(hitTester.isDirty());
+    }
+
+    @Test
+    public void isOnSticker_polygonFirstThenInverse() throws Exception {
+        StickerHitTester hitTester = new StickerHitTester();
+        float[] matrixValues = new float[]{1, 0, 50, 0, 1, 20, 0, 0, 1};
+        float[] destPointArr = new float[]{
+                50, 20,
+                250, 20,
+                250, 120,
+                50, 120,
+                150, 70
+        };
+
+        // 变换变化后第一次检测不求逆
+        assertTrue(hitTester.isOnSticker(matrixValues, destPointArr, 60, 30, WIDTH, HEIGHT));
+        assertTrue(hitTester.isDirty());
+        assertFalse(hitTester.isOnSticker(matrixValues, destPointArr, 40, 30, WIDTH, HEIGHT));
+        assertFalse(hitTester.isDirty());
+        assertTrue(hitTester.isOnSticker(matrixValues, destPointArr, 249, 119, WIDTH, HEIGHT));
+
+        hitTester.invalidate();
+        assertFalse(hitTester.isOnSticker(matrixValues, destPointArr, 260, 30, WIDTH, HEIGHT));
+        assertTrue(hitTester.isDirty());
+    }
+
+    @Test
+    public void getCurrCtr() throws Exception {
+        float[] destPointArr = new float[]{
+                0, 0,
+                200, 0,
+                200, 100,
+                0, 100,
+                100, 50
+        };
+
+        assertEquals(0, StickerHitTester.getCurrCtr(destPointArr, 2, 2, 40, 40));
+        assertEquals(2, StickerHitTester.getCurrCtr(destPointArr, 198, 101, 40, 40));
+        assertEquals(4, StickerHitTester.getCurrCtr(destPointArr, 100, 50, 40, 40));
+        assertEquals(StickerHitTester.CTR_NONE,
+                StickerHitTester.getCurrCtr(destPointArr, 150, 30, 40, 40));
+    }
+
+    @Test
+    public void hitTest_doesNotAllocate() throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        StickerHitTester hitTester = new StickerHitTester();
+        float[] matrixValues = new float[]{0.8F, -0.6F, 120, 0.6F, 0.8F, 40, 0, 0, 1};
+        float[] destPointArr = new float[]{
+                120, 40,
+                280, 160,
+                220, 240,
+                60, 120,
+                170, 140
+        };
+
+        // 预热, 让 JIT 完成编译且计数接口自身完成初始化
+        int hits = simulateGesture(hitTester, matrixValues, destPointArr);
+        threadMXBean.getThreadAllocatedBytes(threadId);
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        hits += simulateGesture(hitTester, matrixValues, destPointArr);
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        assertTrue(hits > 0);
+        assertEquals(0, after - before);
+    }
+
+    /**
+     * 模拟一次拖动手势: 每个事件检测一次, 矩阵不断失效
+     */
+    private static int simulateGesture(StickerHitTester hitTester, float[] matrixValues,
+            float[] destPointArr) {
+        int hits = 0;
+        for (int i = 0; i < 100000; i++) {
+            // 隔一个事件失效一次, 多边形检测和求逆两条路径都会走到
+            int x = 100 + i % 200;
+            int y = 60 + i % 150;
+            if (hitTester.isOnSticker(matrixValues, destPointArr, x, y, WIDTH, HEIGHT)
+                    || StickerHitTester.getCurrCtr(destPointArr, x, y, 40, 40)
+                    != StickerHitTester.CTR_NONE) {
+                hits++;
+            }
+            if ((i & 1) == 1) {
+                hitTester.invalidate();
+            }
+        }
+        return hits;
+    }
+}